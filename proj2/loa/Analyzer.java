@@ -0,0 +1,198 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static loa.Piece.*;
+
+/** Analyzes a file of positions, several at a time, writing the engine's
+ *  choice of move and value for each as a line of CSV.  The positions
+ *  are separated by blank lines.  Each starts from the initial position
+ *  and is modified by the commands on its lines, which may be set
+ *  commands and moves in the notation of Game, new (which resets the
+ *  board to the initial position); lines beginning with # are
+ *  comments.
+ *  Only a few positions per thread are held in memory at a time, and
+ *  each result is written as soon as its search finishes, so results
+ *  are not necessarily in the order of the positions; the first two
+ *  fields identify the position.  Each search starts afresh (see
+ *  MachinePlayer.newGame), so its results do not depend on which
+ *  positions the same thread analyzed before.
+ *  @author Tasman Kuang
+ */
+class Analyzer {
+
+    /** Header line of the output. */
+    static final String HEADER =
+        "position,line,turn,move,value,depth,nodes,millis,pv";
+
+    /** Maximum number of positions read but not yet written, per
+     *  thread. */
+    static final int PENDING_PER_THREAD = 4;
+
+    /** An Analyzer that searches each position with a MachinePlayer
+     *  having the same settings as TEMPLATE for at most LIMIT
+     *  milliseconds (no limit if LIMIT <= 0), using THREADS threads. */
+    Analyzer(MachinePlayer template, long limit, int threads) {
+        _template = template;
+        _limit = limit;
+        _threads = threads;
+    }
+
+    /** Analyze the positions in INPUT, writing the results, preceded by
+     *  HEADER, to OUTPUT, and reporting malformed positions on the
+     *  standard error.  Return the number of positions analyzed. */
+    int analyze(BufferedReader input, PrintStream output)
+        throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        CompletionService<String> results =
+            new ExecutorCompletionService<>(pool);
+        ThreadLocal<MachinePlayer> players =
+            ThreadLocal.withInitial(() -> new MachinePlayer(null, null,
+                                                            _template));
+        output.println(HEADER);
+        int pending, count;
+        pending = count = 0;
+        try {
+            while (true) {
+                Board board = readPosition(input);
+                if (board == null) {
+                    break;
+                }
+                int number = count + 1, line = _positionLine;
+                count += 1;
+                results.submit(() -> analyze(players.get(), board, number,
+                                             line));
+                pending += 1;
+                if (pending == PENDING_PER_THREAD * _threads) {
+                    output.println(results.take().get());
+                    pending -= 1;
+                }
+            }
+            for (; pending > 0; pending -= 1) {
+                output.println(results.take().get());
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new Error("analysis failed", excp);
+        } finally {
+            pool.shutdownNow();
+        }
+        output.flush();
+        return count;
+    }
+
+    /** Return the CSV line describing the analysis of BOARD, the NUMBERth
+     *  position, starting at line LINE of the input, by PLAYER. */
+    private String analyze(MachinePlayer player, Board board, int number,
+                           int line) {
+        Piece winner = board.winner();
+        if (winner != null) {
+            int value = winner == WP ? Searcher.WINNING_VALUE
+                : winner == BP ? -Searcher.WINNING_VALUE : 0;
+            return String.format("%d,%d,%s,,%d,0,0,0,", number, line,
+                                 board.turn().fullName(), value);
+        }
+        player.newGame();
+        Move move = player.searchForMove(board, _limit);
+        if (move == null) {
+            return String.format("%d,%d,%s,,,0,0,0,", number, line,
+                                 board.turn().fullName());
+        }
+        SearchStats stats = player.searchStats();
+        StringBuilder pv = new StringBuilder();
+        for (Move m : stats.principalVariation()) {
+            pv.append(pv.length() == 0 ? "" : " ").append(m);
+        }
+        return String.format("%d,%d,%s,%s,%d,%d,%d,%d,%s", number, line,
+                             board.turn().fullName(), move, stats.value(),
+                             stats.depth(), stats.nodes(), stats.millis(),
+                             pv);
+    }
+
+    /** Return the next position described in INPUT, or null if there are
+     *  no more.  Sets _positionLine to the number of its first line.
+     *  Positions with errors are reported and skipped. */
+    private Board readPosition(BufferedReader input) throws IOException {
+        Board board = null;
+        boolean bad = false;
+        while (true) {
+            String line = input.readLine();
+            if (line != null) {
+                _lineNumber += 1;
+            }
+            if (line == null || line.trim().isEmpty()) {
+                if (line == null && board == null) {
+                    return null;
+                } else if (board != null && !bad) {
+                    return board;
+                }
+                board = null;
+                bad = false;
+                continue;
+            } else if (line.trim().startsWith("#")) {
+                continue;
+            }
+            if (board == null) {
+                board = new Board();
+                _positionLine = _lineNumber;
+            }
+            if (!bad) {
+                try {
+                    execute(board, line.trim());
+                } catch (IllegalArgumentException excp) {
+                    System.err.printf("line %d: %s%n", _lineNumber,
+                                      excp.getMessage());
+                    bad = true;
+                }
+            }
+        }
+    }
+
+    /** Apply the command LINE (as described in the class comment) to
+     *  BOARD.  Throws IllegalArgumentException if LINE is invalid. */
+    private static void execute(Board board, String line) {
+        String[] words = line.split("\\s+");
+        switch (words[0].toLowerCase()) {
+        case "set":
+            if (words.length < 4) {
+                throw new IllegalArgumentException("too few arguments to "
+                                                   + "set: " + line);
+            }
+            Game.setSquare(board, words[1], words[2].toLowerCase(),
+                           words[3].toLowerCase());
+            break;
+        case "new":
+            board.clear();
+            break;
+        default:
+            Move move = Move.mv(words[0]);
+            if (move == null) {
+                throw new IllegalArgumentException("unknown command: "
+                                                   + line);
+            } else if (board.gameOver() || !board.isLegal(move)) {
+                throw new IllegalArgumentException("illegal move: " + line);
+            }
+            board.makeMove(move);
+        }
+    }
+
+    /** Settings of the MachinePlayers that do the analysis. */
+    private final MachinePlayer _template;
+    /** Time limit per position in milliseconds (none if <= 0). */
+    private final long _limit;
+    /** Number of positions analyzed at once. */
+    private final int _threads;
+    /** Number of the last line read. */
+    private int _lineNumber;
+    /** Number of the first line of the last position read. */
+    private int _positionLine;
+
+}
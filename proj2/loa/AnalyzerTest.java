@@ -0,0 +1,109 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static loa.Piece.*;
+import static loa.Square.sq;
+import static loa.Move.mv;
+
+/** Tests of the Analyzer class.
+ *  @author Tasman Kuang
+ */
+public class AnalyzerTest {
+
+    /** Positions to analyze: two good ones, two with errors (which are
+     *  skipped), one made with set, and a repetition of the second.  */
+    static final String POSITIONS =
+        "# Openings\n"
+        + "b1-b3\n"
+        + "a2-c2\n"
+        + "\n"
+        + "\n"
+        + "b1-b3\n"
+        + "\n"
+        + "b1-b4\n"
+        + "\n"
+        + "frob\n"
+        + "\n"
+        + "b1-b3\n"
+        + "new\n"
+        + "set d4 black white\n"
+        + "\n"
+        + "b1-b3\n";
+
+    /** Test that positions are read as described, that each yields a
+     *  well-formed line of CSV with a legal move, and that the results
+     *  do not depend on the number of threads or on the positions
+     *  analyzed before. */
+    @Test
+    public void testAnalyze() throws IOException {
+        Board[] boards = new Board[4];
+        boards[0] = new Board();
+        boards[0].makeMove(mv("b1-b3"));
+        boards[0].makeMove(mv("a2-c2"));
+        boards[1] = new Board();
+        boards[1].makeMove(mv("b1-b3"));
+        boards[2] = new Board();
+        boards[2].set(sq("d4"), BP, WP);
+        boards[3] = boards[1];
+        int[] lines = { 2, 6, 12, 16 };
+
+        TreeMap<Integer, String[]> serial = analyze(1),
+            parallel = analyze(3);
+        assertEquals(boards.length, serial.size());
+        for (int n = 1; n <= boards.length; n += 1) {
+            String[] fields = serial.get(n);
+            Board board = boards[n - 1];
+            assertEquals("line", lines[n - 1], Integer.parseInt(fields[1]));
+            assertEquals("turn", board.turn().fullName(), fields[2]);
+            assertTrue("legal move", board.isLegal(mv(fields[3])));
+            assertEquals("depth", "3", fields[5]);
+            if (!fields[8].isEmpty()) {
+                assertEquals("principal variation", fields[3],
+                             fields[8].split(" ")[0]);
+            }
+            fields[7] = "";
+            parallel.get(n)[7] = "";
+            assertArrayEquals("threads", fields, parallel.get(n));
+        }
+        assertArrayEquals("repetition",
+                          Arrays.copyOfRange(serial.get(2), 2, 9),
+                          Arrays.copyOfRange(serial.get(4), 2, 9));
+    }
+
+    /** Return the fields of the lines written by analyzing POSITIONS to
+     *  depth 3 with THREADS threads, by position number, checking the
+     *  header and the number of fields. */
+    private static TreeMap<Integer, String[]> analyze(int threads)
+        throws IOException {
+        MachinePlayer template = new MachinePlayer();
+        template.setMaxDepth(3);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream output = new PrintStream(bytes, true);
+        int count =
+            new Analyzer(template, 0, threads)
+            .analyze(new BufferedReader(new StringReader(POSITIONS)), output);
+        String[] lines = bytes.toString().split("\\R");
+        assertEquals("header", Analyzer.HEADER, lines[0]);
+        assertEquals("lines written", count + 1, lines.length);
+        TreeMap<Integer, String[]> result = new TreeMap<>();
+        for (int k = 1; k < lines.length; k += 1) {
+            String[] fields = lines[k].split(",", -1);
+            assertEquals(lines[k], 9, fields.length);
+            result.put(Integer.parseInt(fields[0]), fields);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,128 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static loa.Piece.*;
+import static loa.Square.*;
+
+/** A Board that answers legality and contiguity queries by walking its
+ *  squares one at a time, as Board did before it kept its pieces in
+ *  bit masks.  It serves as a reference for testing and timing Board.
+ *  @author Tasman Kuang
+ */
+class ArrayBoard extends Board {
+
+    /** An ArrayBoard whose initial contents are taken from
+     *  INITIALCONTENTS and in which the player playing TURN is to move,
+     *  as for the corresponding Board constructor. */
+    ArrayBoard(Piece[][] initialContents, Piece turn) {
+        super(initialContents, turn);
+    }
+
+    /** A new ArrayBoard in the standard initial position. */
+    ArrayBoard() {
+        super();
+    }
+
+    /** An ArrayBoard whose initial contents and state are copied from
+     *  BOARD. */
+    ArrayBoard(Board board) {
+        super(board);
+    }
+
+    @Override
+    boolean isLegal(Square from, Square to) {
+        if (to == null || get(from) != turn()
+            || !from.isValidMove(to) || blocked(from, to)) {
+            return false;
+        }
+        int count = 1;
+        Square x = from.moveDest(from.direction(to), 1);
+        Square y = from.moveDest(to.direction(from), 1);
+        while (x != null) {
+            if (get(x) != EMP) {
+                count++;
+            }
+            x = x.moveDest(from.direction(to), 1);
+        }
+        while (y != null) {
+            if (get(y) != EMP) {
+                count++;
+            }
+            y = y.moveDest(to.direction(from), 1);
+        }
+        return count == from.distance(to);
+    }
+
+    @Override
+    List<Move> legalMoves() {
+        List<Move> moves = new ArrayList<>();
+        for (Square from : ALL_SQUARES) {
+            if (get(from) != turn()) {
+                continue;
+            }
+            for (Square to : ALL_SQUARES) {
+                if (from.isValidMove(to) && isLegal(from, to)) {
+                    moves.add(Move.mv(from, to,
+                                      get(to) == turn().opposite()));
+                }
+            }
+        }
+        return moves;
+    }
+
+    @Override
+    boolean piecesContiguous(Piece side) {
+        return getRegionSizes(side).size() == 1;
+    }
+
+    @Override
+    List<Integer> getRegionSizes(Piece s) {
+        boolean[][] visited = new boolean[BOARD_SIZE][BOARD_SIZE];
+        ArrayList<Integer> sizes = new ArrayList<>();
+        for (Square sq : ALL_SQUARES) {
+            if (get(sq) == s && !visited[sq.col()][sq.row()]) {
+                sizes.add(numContig(sq, visited, s));
+            }
+        }
+        Collections.sort(sizes, Collections.reverseOrder());
+        return sizes;
+    }
+
+    /** Return true if a move from FROM to TO is blocked by an opposing
+     *  piece or by a friendly piece on the target square. */
+    private boolean blocked(Square from, Square to) {
+        if (to == from || get(from) == get(to)) {
+            return true;
+        }
+        int dir = from.direction(to);
+        for (from = from.moveDest(dir, 1); from != to;
+             from = from.moveDest(dir, 1)) {
+            if (get(from) == turn().opposite()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the size of the as-yet unvisited cluster of squares
+     *  containing P at and adjacent to SQ.  VISITED indicates squares that
+     *  have already been processed or are in different clusters.  Update
+     *  VISITED to reflect squares counted. */
+    private int numContig(Square sq, boolean[][] visited, Piece p) {
+        if (p == EMP || get(sq) != p || visited[sq.col()][sq.row()]) {
+            return 0;
+        }
+        visited[sq.col()][sq.row()] = true;
+        int count = 1;
+        for (Square s: sq.adjacent()) {
+            count += numContig(s, visited, p);
+        }
+        return count;
+    }
+
+}
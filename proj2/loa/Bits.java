@@ -0,0 +1,232 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import static loa.Square.*;
+
+/** Precomputed masks and helper routines for boards represented as
+ *  64-bit sets of squares.  Bit k of a mask corresponds to the Square
+ *  whose index() is k, so that bit 0 is a1 and bit 63 is h8.
+ *  @author Tasman Kuang
+ */
+final class Bits {
+
+    /** Not instantiable. */
+    private Bits() {
+    }
+
+    /** Number of lines (column, diagonal, row, antidiagonal) through
+     *  each square.  Direction DIR (as for Square.moveDest) runs along
+     *  line DIR % NUM_AXES. */
+    static final int NUM_AXES = 4;
+
+    /** Increments in column and row for each direction, as for
+     *  Square.moveDest. */
+    static final int[]
+        DC = {  0,  1,  1,  1,  0, -1, -1, -1 },
+        DR = {  1,  1,  0, -1, -1, -1,  0,  1 };
+
+    /** Squares in the leftmost and rightmost columns. */
+    static final long
+        COL_A = 0x0101010101010101L,
+        COL_H = COL_A << (BOARD_SIZE - 1);
+
+    /** Return the mask containing only the square with index SQ. */
+    static long bit(int sq) {
+        return 1L << sq;
+    }
+
+    /** Return the mask containing only the square at column C and row R,
+     *  or 0 if there is no such square. */
+    private static long squareBit(int c, int r) {
+        return exists(c, r) ? bit(r * BOARD_SIZE + c) : 0;
+    }
+
+    /** Return the mask of all squares on line AXIS through square SQ,
+     *  including SQ itself. */
+    static long line(int sq, int axis) {
+        return LINES[sq * NUM_AXES + axis];
+    }
+
+    /** Number of distinct lines of each kind: columns, diagonals, rows,
+     *  and antidiagonals. */
+    static final int NUM_LINES = 2 * BOARD_SIZE + 2 * (2 * BOARD_SIZE - 1);
+
+    /** Return a number in the range 0 .. NUM_LINES - 1 that identifies
+     *  line AXIS through square SQ.  Squares on the same line have the
+     *  same number. */
+    static int lineIndex(int sq, int axis) {
+        return LINE_INDEX[sq * NUM_AXES + axis];
+    }
+
+    /** Return the mask of squares strictly between FROM and TO, or 0 if
+     *  the two are not on a common line. */
+    static long between(int from, int to) {
+        return BETWEEN[from * NUM_SQUARES + to];
+    }
+
+    /** Return the mask of the squares adjacent to SQ. */
+    static long neighbors(int sq) {
+        return NEIGHBORS[sq];
+    }
+
+    /** Return the index of the square STEPS>0 squares away from SQ in
+     *  direction DIR, or -1 if it is off the board. */
+    static int dest(int sq, int dir, int steps) {
+        return DESTS[(sq * 8 + dir) * (BOARD_SIZE + 1) + steps];
+    }
+
+    /** Return SET together with all squares adjacent to a member of
+     *  SET. */
+    static long spread(long set) {
+        long x = set | (set << BOARD_SIZE) | (set >>> BOARD_SIZE);
+        return x | ((x & ~COL_H) << 1) | ((x & ~COL_A) >>> 1);
+    }
+
+    /** Return the connected subset of PIECES containing the squares in
+     *  SEED, which must be a subset of PIECES. */
+    static long region(long seed, long pieces) {
+        long prev;
+        do {
+            prev = seed;
+            seed = spread(seed) & pieces;
+        } while (seed != prev);
+        return seed;
+    }
+
+    /** Return true iff the members of PIECES form a single connected
+     *  region (vacuously true if PIECES is empty).  A set with more than
+     *  one member, one of which has no neighbor in the set, is rejected
+     *  without a flood fill. */
+    static boolean connected(long pieces) {
+        long x = (pieces << BOARD_SIZE) | (pieces >>> BOARD_SIZE),
+            y = pieces | x;
+        long adjacent = x | ((y & ~COL_H) << 1) | ((y & ~COL_A) >>> 1);
+        if ((pieces & ~adjacent) != 0 && (pieces & (pieces - 1)) != 0) {
+            return false;
+        }
+        return region(Long.lowestOneBit(pieces), pieces) == pieces;
+    }
+
+    /** Return four times the Euler number (number of 8-connected
+     *  regions minus number of holes) of PIECES, counted by classifying
+     *  each 2x2 window ("quad") of a board padded with empty squares. */
+    static int eulerQuads(long pieces) {
+        int sum = 0;
+        for (int q = 0; q < NUM_QUADS; q += 1) {
+            sum += quad(pieces, q);
+        }
+        return sum;
+    }
+
+    /** Return the contribution to eulerQuads(PIECES) of the four quads
+     *  that contain the square with index SQ.  The change in this value
+     *  when SQ is added to or removed from PIECES is the change in
+     *  eulerQuads(PIECES). */
+    static int eulerQuads(long pieces, int sq) {
+        int q = SQUARE_QUADS[sq];
+        return quad(pieces, q) + quad(pieces, q + 1)
+            + quad(pieces, q + QUADS_PER_ROW)
+            + quad(pieces, q + QUADS_PER_ROW + 1);
+    }
+
+    /** Return the contribution of quad number Q to eulerQuads(PIECES):
+     *  1 for a quad containing one piece, -1 for one containing three,
+     *  -2 for one containing two diagonally adjacent pieces, and
+     *  otherwise 0. */
+    private static int quad(long pieces, int q) {
+        long m = pieces & QUAD_MASKS[q];
+        switch (Long.bitCount(m)) {
+        case 1:
+            return 1;
+        case 2:
+            return m == QUAD_DIAGONALS[2 * q] || m == QUAD_DIAGONALS[2 * q + 1]
+                ? -2 : 0;
+        case 3:
+            return -1;
+        default:
+            return 0;
+        }
+    }
+
+    /** Number of quads in each row, and in all.  Quad number
+     *  R * QUADS_PER_ROW + C has the square in column C and row R at its
+     *  upper right, so that the quads along the edges include squares off
+     *  the board. */
+    private static final int
+        QUADS_PER_ROW = BOARD_SIZE + 1,
+        NUM_QUADS = QUADS_PER_ROW * QUADS_PER_ROW;
+
+    /** The on-board squares in each quad. */
+    private static final long[] QUAD_MASKS = new long[NUM_QUADS];
+
+    /** The two diagonally opposite pairs of squares in each quad (entries
+     *  2 * Q and 2 * Q + 1 for quad Q), or 0 for a pair that is partly
+     *  off the board. */
+    private static final long[] QUAD_DIAGONALS = new long[2 * NUM_QUADS];
+
+    /** The number of the lowest-numbered quad containing each square. */
+    private static final int[] SQUARE_QUADS = new int[NUM_SQUARES];
+
+    /** Lines through each square, indexed by SQ * NUM_AXES + AXIS. */
+    private static final long[] LINES = new long[NUM_SQUARES * NUM_AXES];
+
+    /** Squares strictly between two squares, indexed by
+     *  FROM * NUM_SQUARES + TO. */
+    private static final long[] BETWEEN = new long[NUM_SQUARES * NUM_SQUARES];
+
+    /** Squares adjacent to each square. */
+    private static final long[] NEIGHBORS = new long[NUM_SQUARES];
+
+    /** Line numbers, indexed by SQ * NUM_AXES + AXIS. */
+    private static final byte[] LINE_INDEX = new byte[NUM_SQUARES * NUM_AXES];
+
+    /** Destinations of moves, indexed by (SQ * 8 + DIR) * (BOARD_SIZE + 1)
+     *  + STEPS, for 0 <= STEPS <= BOARD_SIZE. */
+    private static final byte[] DESTS =
+        new byte[NUM_SQUARES * 8 * (BOARD_SIZE + 1)];
+
+    static {
+        for (int sq = 0; sq < NUM_SQUARES; sq += 1) {
+            int c = sq & (BOARD_SIZE - 1), r = sq >>> 3;
+            for (int dir = 0; dir < 8; dir += 1) {
+                for (int k = 0; k <= BOARD_SIZE; k += 1) {
+                    int c1 = c + DC[dir] * k, r1 = r + DR[dir] * k;
+                    DESTS[(sq * 8 + dir) * (BOARD_SIZE + 1) + k] =
+                        (byte) (k > 0 && exists(c1, r1) ? r1 * 8 + c1 : -1);
+                }
+            }
+            SQUARE_QUADS[sq] = r * QUADS_PER_ROW + c;
+            LINE_INDEX[sq * NUM_AXES] = (byte) c;
+            LINE_INDEX[sq * NUM_AXES + 1] =
+                (byte) (BOARD_SIZE + c - r + BOARD_SIZE - 1);
+            LINE_INDEX[sq * NUM_AXES + 2] =
+                (byte) (3 * BOARD_SIZE - 1 + r);
+            LINE_INDEX[sq * NUM_AXES + 3] =
+                (byte) (4 * BOARD_SIZE - 1 + c + r);
+        }
+        for (int q = 0; q < NUM_QUADS; q += 1) {
+            int c = q % QUADS_PER_ROW, r = q / QUADS_PER_ROW;
+            long ll = squareBit(c - 1, r - 1), lr = squareBit(c, r - 1),
+                ul = squareBit(c - 1, r), ur = squareBit(c, r);
+            QUAD_MASKS[q] = ll | lr | ul | ur;
+            QUAD_DIAGONALS[2 * q] = ll == 0 || ur == 0 ? 0 : ll | ur;
+            QUAD_DIAGONALS[2 * q + 1] = lr == 0 || ul == 0 ? 0 : lr | ul;
+        }
+        for (int sq = 0; sq < NUM_SQUARES; sq += 1) {
+            for (int dir = 0; dir < 8; dir += 1) {
+                long ray = 0;
+                for (int k = 1, to = dest(sq, dir, 1); to != -1;
+                     k += 1, to = dest(sq, dir, k)) {
+                    BETWEEN[sq * NUM_SQUARES + to] = ray;
+                    ray |= bit(to);
+                }
+                LINES[sq * NUM_AXES + dir % NUM_AXES] |= ray | bit(sq);
+                if (dest(sq, dir, 1) != -1) {
+                    NEIGHBORS[sq] |= bit(dest(sq, dir, 1));
+                }
+            }
+        }
+    }
+
+}
@@ -7,9 +7,11 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Formatter;
 import java.util.List;
+import java.util.Random;
 
 import java.util.regex.Pattern;
 
+import static loa.Bits.*;
 import static loa.Piece.*;
 import static loa.Square.*;
 
@@ -21,6 +23,9 @@ class Board {
     /** Default number of moves for each side that results in a draw. */
     static final int DEFAULT_MOVE_LIMIT = 60;
 
+    /** An upper bound on the number of legal moves in any position. */
+    static final int MAX_MOVES = 12 * 8;
+
     /** Pattern describing a valid square designator (cr). */
     static final Pattern ROW_COL = Pattern.compile("^[a-h][1-8]$");
 
@@ -51,15 +56,27 @@ class Board {
 
     /** Set my state to CONTENTS with SIDE to move. */
     void initialize(Piece[][] contents, Piece side) {
+        _black = _white = 0;
+        _key = 0;
+        Arrays.fill(_lineCounts, 0);
+        Arrays.fill(_pieceCount, 0);
+        Arrays.fill(_sumCol, 0);
+        Arrays.fill(_sumRow, 0);
+        Arrays.fill(_sumSquares, 0);
+        Arrays.fill(_eulerQuads, 0);
         int index = 0;
         for (int i = 0; i < contents.length; i++) {
             for (int j = 0; j < contents[0].length; j++) {
-                _board[index] = contents[i][j];
+                _board[index] = EMP;
+                setBits(index, contents[i][j]);
                 index++;
             }
         }
+        _movesMade = 0;
         _turn = side;
         _moveLimit = DEFAULT_MOVE_LIMIT;
+        _regions = 0;
+        _winnerKnown = false;
     }
 
     /** Set me to the initial configuration. */
@@ -72,11 +89,28 @@ class Board {
         if (board == this) {
             return;
         }
-        for (int i = 0; i < _board.length; i++) {
-            _board[i] = board._board[i];
+        System.arraycopy(board._board, 0, _board, 0, _board.length);
+        _black = board._black;
+        _white = board._white;
+        _key = board._key;
+        System.arraycopy(board._lineCounts, 0, _lineCounts, 0,
+                         _lineCounts.length);
+        for (int side = 0; side < 2; side += 1) {
+            _pieceCount[side] = board._pieceCount[side];
+            _sumCol[side] = board._sumCol[side];
+            _sumRow[side] = board._sumRow[side];
+            _sumSquares[side] = board._sumSquares[side];
+            _eulerQuads[side] = board._eulerQuads[side];
+        }
+        _movesMade = board._movesMade;
+        if (_undo.length < board._undo.length) {
+            _undo = new int[board._undo.length];
         }
+        System.arraycopy(board._undo, 0, _undo, 0, _movesMade * UNDO_SIZE);
         _turn = board._turn;
         _moveLimit = board._moveLimit;
+        _regions = board._regions;
+        _winnerKnown = false;
     }
 
     /** Return the contents of the square at SQ. */
@@ -87,10 +121,11 @@ class Board {
     /** Set the square at SQ to V and set the side that is to move next
      *  to NEXT, if NEXT is not null. */
     void set(Square sq, Piece v, Piece next) {
-        _board[sq.index()] = v;
+        setBits(sq.index(), v);
         if (next != null) {
             _turn = next;
         }
+        _winnerKnown = false;
     }
 
     /** Set the square at SQ to V, without modifying the side that
@@ -109,28 +144,48 @@ class Board {
      *  is false. */
     void makeMove(Move move) {
         assert isLegal(move);
-        if (get(move.getTo()) != EMP) {
-            _moves.add(move.captureMove());
-        } else {
-            _moves.add(move);
+        makeMove(move.index());
+    }
+
+    /** Assuming isLegal(Move.mv(MOVE)), make the move whose index() is
+     *  MOVE (whose capture bit need not be set).  Records what retract
+     *  needs on _undo, so that no objects are allocated. */
+    void makeMove(int move) {
+        int from = move >>> 7, to = (move >>> 1) & (NUM_SQUARES - 1);
+        int k = _movesMade * UNDO_SIZE;
+        if (k == _undo.length) {
+            _undo = Arrays.copyOf(_undo, 2 * _undo.length);
         }
-        set(move.getTo(), get(move.getFrom()), turn().opposite());
-        set(move.getFrom(), EMP);
-        _moveLimit--;
+        _undo[k + UNDO_MOVE] = Move.index(from, to, _board[to] != EMP);
+        _undo[k + UNDO_REGIONS] = _regions;
+        _undo[k + UNDO_LIMIT] = _moveLimit;
+        _undo[k + UNDO_KEY] = (int) _key;
+        _undo[k + UNDO_KEY + 1] = (int) (_key >>> 32);
+        setBits(to, _board[from]);
+        setBits(from, EMP);
+        _turn = _turn.opposite();
+        _movesMade += 1;
+        _moveLimit -= 1;
+        _winnerKnown = false;
     }
 
     /** Retract (unmake) one move, returning to the state immediately before
      *  that move.  Requires that movesMade () > 0. */
     void retract() {
         assert movesMade() > 0;
-        Move move = _moves.remove(_moves.size() - 1);
-        set(move.getFrom(), turn().opposite(), _turn.opposite());
-        if (move.isCapture()) {
-            set(move.getTo(), turn().opposite());
-        } else {
-            set(move.getTo(), EMP);
-        }
-        _moveLimit++;
+        _movesMade -= 1;
+        int k = _movesMade * UNDO_SIZE;
+        int move = _undo[k + UNDO_MOVE];
+        int from = move >>> 7, to = (move >>> 1) & (NUM_SQUARES - 1);
+        Piece mover = _turn.opposite();
+        setBits(from, mover);
+        setBits(to, (move & 1) != 0 ? _turn : EMP);
+        _turn = mover;
+        _regions = _undo[k + UNDO_REGIONS];
+        _moveLimit = _undo[k + UNDO_LIMIT];
+        _key = (_undo[k + UNDO_KEY] & 0xffffffffL)
+            | ((long) _undo[k + UNDO_KEY + 1] << 32);
+        _winnerKnown = false;
     }
 
     /** Return the Piece representing who is next to move. */
@@ -138,31 +193,60 @@ class Board {
         return _turn;
     }
 
+    /** Return the set of squares occupied by SIDE's pieces, as a mask
+     *  in which bit S.index() is set iff square S holds SIDE. */
+    long pieces(Piece side) {
+        return side == BP ? _black : side == WP ? _white : 0;
+    }
+
+    /** Return the number of SIDE's pieces. */
+    int pieceCount(Piece side) {
+        return _pieceCount[side.ordinal()];
+    }
+
+    /** Return the sum of the column numbers (0-7) of SIDE's pieces. */
+    int sumCol(Piece side) {
+        return _sumCol[side.ordinal()];
+    }
+
+    /** Return the sum of the row numbers (0-7) of SIDE's pieces. */
+    int sumRow(Piece side) {
+        return _sumRow[side.ordinal()];
+    }
+
+    /** Return the sum of COL * COL + ROW * ROW over SIDE's pieces, where
+     *  COL and ROW are as for sumCol and sumRow. */
+    int sumSquares(Piece side) {
+        return _sumSquares[side.ordinal()];
+    }
+
+    /** Return Bits.eulerQuads(pieces(SIDE)): four times the number of
+     *  regions of SIDE's pieces, less holes. */
+    int eulerQuads(Piece side) {
+        return _eulerQuads[side.ordinal()];
+    }
+
+    /** Return a 64-bit Zobrist hash of my contents and the side to move.
+     *  Equal positions have equal keys; unequal positions almost never
+     *  do.  Maintained incrementally, so this takes constant time. */
+    long key() {
+        return _turn == WP ? _key ^ WHITE_TO_MOVE : _key;
+    }
+
     /** Return true iff FROM - TO is a legal move for the player currently on
      *  move. */
     boolean isLegal(Square from, Square to) {
-        if (blocked(from, to) || !from.isValidMove((to))) {
+        if (to == null || !from.isValidMove(to)) {
             return false;
         }
-        int count = 1;
-        Square x = from.moveDest(from.direction(to), 1);
-        Square y = from.moveDest(to.direction(from), 1);
-        while (x != null) {
-            if (get(x) == BP || get(x) == WP) {
-                count++;
-            }
-            x = x.moveDest(from.direction(to), 1);
-        }
-        while (y != null) {
-            if (get(y) == BP || get(y) == WP) {
-                count++;
-            }
-            y = y.moveDest(to.direction(from), 1);
-        }
-        if (count != from.distance(to)) {
+        int f = from.index(), t = to.index();
+        long own = pieces(_turn);
+        if ((own & bit(f)) == 0 || (own & bit(t)) != 0
+            || (pieces(_turn.opposite()) & between(f, t)) != 0) {
             return false;
         }
-        return true;
+        int axis = from.direction(to) % NUM_AXES;
+        return _lineCounts[lineIndex(f, axis)] == from.distance(to);
     }
 
     /** Return true iff MOVE is legal for the player currently on move.
@@ -173,33 +257,38 @@ class Board {
 
     /** Return a sequence of all legal moves from this position. */
     List<Move> legalMoves() {
-        /**List<Move> moves = new ArrayList<>();
-        List<Square> squares = new ArrayList<>();
-        for (int i = 0; i < _board.length; i++) {
-            if (_board[i].equals(turn())) {
-                int x = Math.floorDiv(i, BOARD_SIZE);
-                int y = i % BOARD_SIZE;
-                squares.add(sq(x, y));
-            }
+        int[] moves = new int[MAX_MOVES];
+        int n = legalMoves(moves);
+        ArrayList<Move> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i += 1) {
+            result.add(Move.mv(moves[i]));
         }
-        for (Square s: squares) {
-            for (int i = 0; i < _board.length; i++) {
-                int x = Math.floorDiv(i, BOARD_SIZE);
-                int y = i % BOARD_SIZE;
-                boolean capture = false;
-                if (get(sq(x, y)).equals(turn().opposite())) {
-                    capture = true;
-                }
-                Move legal = Move.mv(s, sq(x, y), capture);
-                if (isLegal(legal)) {
-                    moves.add(legal);
+        return result;
+    }
+
+    /** Store the index() values of all legal moves from this position in
+     *  MOVES[0 .. N-1], and return N.  MOVES must have room for
+     *  MAX_MOVES moves.  For each of the mover's pieces and each
+     *  direction, the length of the move is the count of pieces on the
+     *  line, which is kept up to date by set, so that this takes time
+     *  proportional to the number of pieces. */
+    int legalMoves(int[] moves) {
+        int n = 0;
+        long own = pieces(_turn), opp = pieces(_turn.opposite());
+        for (long rest = own; rest != 0; rest &= rest - 1) {
+            int from = Long.numberOfTrailingZeros(rest);
+            for (int dir = 0; dir < 8; dir += 1) {
+                int to =
+                    dest(from, dir,
+                         _lineCounts[lineIndex(from, dir % NUM_AXES)]);
+                if (to != -1 && (own & bit(to)) == 0
+                    && (opp & between(from, to)) == 0) {
+                    moves[n] = Move.index(from, to, (opp & bit(to)) != 0);
+                    n += 1;
                 }
             }
         }
-        return moves;**/
-        return null;
-
-
+        return n;
     }
 
     /** Return true iff the game is over (either player has all his
@@ -210,24 +299,34 @@ class Board {
 
     /** Return true iff SIDE's pieces are continguous. */
     boolean piecesContiguous(Piece side) {
-        return getRegionSizes(side).size() == 1;
+        if (side == EMP) {
+            return false;
+        }
+        int shift = side == BP ? 0 : REGION_BITS;
+        if ((_regions & (REGIONS_KNOWN << shift)) == 0) {
+            long mine = pieces(side);
+            _regions |= REGIONS_KNOWN << shift;
+            if (mine != 0 && connected(mine)) {
+                _regions |= CONTIGUOUS << shift;
+            }
+        }
+        return (_regions & (CONTIGUOUS << shift)) != 0;
     }
 
     /** Return the winning side, if any.  If the game is not over, result is
      *  null.  If the game has ended in a tie, returns EMP. */
     Piece winner() {
-        if (piecesContiguous(_turn)) {
-            _winner = _turn;
-            _winnerKnown = true;
-        } else if (piecesContiguous(_turn.opposite())) {
-            _winner = _turn.opposite();
-            _winnerKnown = true;
-        } else if (_moves.size() >= _moveLimit) {
-            _winner = EMP;
+        if (!_winnerKnown) {
+            if (piecesContiguous(_turn)) {
+                _winner = _turn;
+            } else if (piecesContiguous(_turn.opposite())) {
+                _winner = _turn.opposite();
+            } else if (_movesMade >= _moveLimit) {
+                _winner = EMP;
+            } else {
+                _winner = null;
+            }
             _winnerKnown = true;
-        } else {
-            _winnerKnown = false;
-            _winner = null;
         }
         return _winner;
     }
@@ -236,18 +335,37 @@ class Board {
      *  retracted).  Each valid call to makeMove with a normal move increases
      *  this number by 1. */
     int movesMade() {
-        return _moves.size();
+        return _movesMade;
+    }
+
+    /** Return the number of moves (by both sides) that may still be made
+     *  before the game is tied. */
+    int movesLeft() {
+        return Math.max(0, (_moveLimit - _movesMade + 1) / 2);
+    }
+
+    /** Return the index() of move number K (numbering from 0) of those
+     *  made and not retracted, with its capture bit set iff it was a
+     *  capture.  Requires 0 <= K < movesMade(). */
+    int moveIndex(int k) {
+        assert 0 <= k && k < _movesMade;
+        return _undo[k * UNDO_SIZE + UNDO_MOVE];
     }
 
     @Override
     public boolean equals(Object obj) {
+        if (!(obj instanceof Board)) {
+            return false;
+        }
         Board b = (Board) obj;
-        return Arrays.deepEquals(_board, b._board) && _turn == b._turn;
+        return key() == b.key() && _turn == b._turn
+            && Arrays.equals(_board, b._board);
     }
 
     @Override
     public int hashCode() {
-        return Arrays.deepHashCode(_board) * 2 + _turn.hashCode();
+        long key = key();
+        return (int) (key ^ (key >>> 32));
     }
 
     @Override
@@ -265,72 +383,100 @@ class Board {
         return out.toString();
     }
 
-    /** Return true if a move from FROM to TO is blocked by an opposing
-     *  piece or by a friendly piece on the target square. */
-    private boolean blocked(Square from, Square to) {
-        if (to == null || to == from || get(from) == get(to)) {
-            return true;
-        }
-        from = from.moveDest(from.direction(to), 1);
-        while (!from.equals(to)) {
-            if (get(from) == turn().opposite()) {
-                return true;
-            }
-            from = from.moveDest(from.direction(to), 1);
+    /** Return the sizes of all the regions in the current union-find
+     *  structure for side S. */
+    List<Integer> getRegionSizes(Piece s) {
+        ArrayList<Integer> sizes = new ArrayList<>();
+        for (long rest = pieces(s); rest != 0; ) {
+            long region = region(Long.lowestOneBit(rest), rest);
+            sizes.add(Long.bitCount(region));
+            rest &= ~region;
         }
-        return false;
+        Collections.sort(sizes, Collections.reverseOrder());
+        return sizes;
     }
 
-    /** Return the size of the as-yet unvisited cluster of squares
-     *  containing P at and adjacent to SQ.  VISITED indicates squares that
-     *  have already been processed or are in different clusters.  Update
-     *  VISITED to reflect squares counted. */
-    private int numContig(Square sq, boolean[][] visited, Piece p) {
-        if (p == EMP || get(sq) != p || visited[sq.col()][sq.row()]) {
-            return 0;
+    /** Put V on the square with index SQ, keeping _board and the piece
+     *  masks in step. */
+    private void setBits(int sq, Piece v) {
+        Piece old = _board[sq];
+        int oldQuads = old == EMP ? 0 : Bits.eulerQuads(pieces(old), sq),
+            newQuads = v == EMP ? 0 : Bits.eulerQuads(pieces(v), sq);
+        _regions &= ~(regionsChanged(_board[sq]) | regionsChanged(v));
+        _key ^= zobrist(_board[sq], sq) ^ zobrist(v, sq);
+        int change = (v == EMP ? 0 : 1) - (_board[sq] == EMP ? 0 : 1);
+        if (change != 0) {
+            for (int axis = 0; axis < NUM_AXES; axis += 1) {
+                _lineCounts[lineIndex(sq, axis)] += change;
+            }
+        }
+        long mask = bit(sq);
+        _black &= ~mask;
+        _white &= ~mask;
+        if (v == BP) {
+            _black |= mask;
+        } else if (v == WP) {
+            _white |= mask;
         }
-        visited[sq.col()][sq.row()] = true;
-        int count = 1;
-        for (Square s: sq.adjacent()) {
-            count += numContig(s, visited, p);
+        _board[sq] = v;
+        if (old != EMP) {
+            updateFeatures(old.ordinal(), sq, -1,
+                           Bits.eulerQuads(pieces(old), sq) - oldQuads);
+        }
+        if (v != EMP) {
+            updateFeatures(v.ordinal(), sq, 1,
+                           Bits.eulerQuads(pieces(v), sq) - newQuads);
         }
-        return count;
     }
 
-    /** Set the values of _whiteRegionSizes and _blackRegionSizes. */
-    private void computeRegions() {
-        boolean[][] visited = new boolean[BOARD_SIZE][BOARD_SIZE];
-        if (_subsetsInitialized) {
-            return;
+    /** Update the evaluation features of the side whose ordinal is SIDE
+     *  for the addition (SIGN == 1) or removal (SIGN == -1) of its piece
+     *  on the square with index SQ, which changed its eulerQuads value by
+     *  DQUADS. */
+    private void updateFeatures(int side, int sq, int sign, int dQuads) {
+        int c = sq & (BOARD_SIZE - 1), r = sq >>> 3;
+        _pieceCount[side] += sign;
+        _sumCol[side] += sign * c;
+        _sumRow[side] += sign * r;
+        _sumSquares[side] += sign * (c * c + r * r);
+        _eulerQuads[side] += dQuads;
+    }
+
+    /** Return the bits of _regions that become invalid when a piece P
+     *  is added or removed. */
+    private static int regionsChanged(Piece p) {
+        if (p == BP) {
+            return REGION_MASK;
+        } else if (p == WP) {
+            return REGION_MASK << REGION_BITS;
         }
-        _whiteRegionSizes.clear();
-        _blackRegionSizes.clear();
-        for (int i = 0; i < visited.length; i++) {
-            for (int j = 0; j < visited[0].length; j++) {
-                if (!visited[i][j]) {
-                    if (get(sq(i, j)) == WP) {
-                        _whiteRegionSizes.add(numContig(sq(i, j), visited, WP));
-                    }
-                    if (get(sq(i, j)) == BP) {
-                        _blackRegionSizes.add(numContig(sq(i, j), visited, BP));
-                    }
-                }
-            }
+        return 0;
+    }
+
+    /** Return the Zobrist key for piece P on the square with index SQ
+     *  (0 if P is empty). */
+    private static long zobrist(Piece p, int sq) {
+        if (p == BP) {
+            return ZOBRIST[sq];
+        } else if (p == WP) {
+            return ZOBRIST[NUM_SQUARES + sq];
         }
-        Collections.sort(_whiteRegionSizes, Collections.reverseOrder());
-        Collections.sort(_blackRegionSizes, Collections.reverseOrder());
-        _subsetsInitialized = true;
+        return 0;
     }
 
-    /** Return the sizes of all the regions in the current union-find
-     *  structure for side S. */
-    List<Integer> getRegionSizes(Piece s) {
-        computeRegions();
-        if (s == WP) {
-            return _whiteRegionSizes;
-        } else {
-            return _blackRegionSizes;
+    /** Random keys for a black piece (first NUM_SQUARES entries) or a white
+     *  piece (the rest) on each square. */
+    private static final long[] ZOBRIST = new long[2 * NUM_SQUARES];
+
+    /** Key that is included in key() when white is to move. */
+    private static final long WHITE_TO_MOVE;
+
+    static {
+        Random keys = new Random(0x10a);
+        for (int i = 0; i < ZOBRIST.length; i += 1) {
+            ZOBRIST[i] = keys.nextLong();
         }
+        WHITE_TO_MOVE = keys.nextLong();
     }
 
     /** The standard initial configuration for Lines of Action (bottom row
@@ -349,8 +495,50 @@ class Board {
     /** Current contents of the board.  Square S is at _board[S.index()]. */
     private final Piece[] _board = new Piece[BOARD_SIZE  * BOARD_SIZE];
 
-    /** List of all unretracted moves on this board, in order. */
-    private final ArrayList<Move> _moves = new ArrayList<>();
+    /** Squares occupied by black and white pieces, respectively.  Bit
+     *  S.index() of _black is set iff _board[S.index()] == BP, and
+     *  likewise for _white. */
+    private long _black, _white;
+
+    /** _lineCounts[lineIndex(S, AXIS)] is the number of pieces on line
+     *  AXIS through the square with index S. */
+    private final int[] _lineCounts = new int[NUM_LINES];
+
+    /** Evaluation features of black's (index 0) and white's (index 1)
+     *  pieces, kept up to date by setBits: number of pieces, sums of
+     *  column and row numbers and of their squares, and eulerQuads. */
+    private final int[]
+        _pieceCount = new int[2], _sumCol = new int[2], _sumRow = new int[2],
+        _sumSquares = new int[2], _eulerQuads = new int[2];
+
+    /** Zobrist hash of the pieces on the board, not including the side to
+     *  move. */
+    private long _key;
+
+    /** Flags in _regions, recording for black and (shifted left by
+     *  REGION_BITS) for white whether contiguity is known and whether
+     *  the pieces are contiguous. */
+    private static final int
+        REGIONS_KNOWN = 1, CONTIGUOUS = 2, REGION_MASK = 3, REGION_BITS = 2;
+
+    /** Contiguity of each side, so far as it has been computed for the
+     *  current position, as a combination of the flags REGIONS_KNOWN and
+     *  CONTIGUOUS.  Each move invalidates only the flags of the side(s)
+     *  whose pieces it changes. */
+    private int _regions;
+    /** Layout of the entry in _undo for each move: the move's index()
+     *  (with its capture bit set iff it captured), and the values of
+     *  _regions, _moveLimit, and (in two ints, low half first) _key
+     *  before the move. */
+    private static final int
+        UNDO_MOVE = 0, UNDO_REGIONS = 1, UNDO_LIMIT = 2, UNDO_KEY = 3,
+        UNDO_SIZE = 5;
+
+    /** Stack of entries, each UNDO_SIZE ints, recording how to retract
+     *  each of the unretracted moves on this board, in order. */
+    private int[] _undo = new int[UNDO_SIZE * 2 * DEFAULT_MOVE_LIMIT];
+    /** Number of unretracted moves on this board. */
+    private int _movesMade;
     /** Current side on move. */
     private Piece _turn;
     /** Limit on number of moves before tie is declared.  */
@@ -361,11 +549,4 @@ class Board {
      *  in progress).  Use only if _winnerKnown. */
     private Piece _winner;
 
-    /** True iff subsets computation is up-to-date. */
-    private boolean _subsetsInitialized;
-
-    /** List of the sizes of continguous clusters of pieces, by color. */
-    private final ArrayList<Integer>
-        _whiteRegionSizes = new ArrayList<>(),
-        _blackRegionSizes = new ArrayList<>();
 }
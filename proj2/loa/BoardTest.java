@@ -2,6 +2,10 @@
  * University of California.  All rights reserved. */
 package loa;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -125,4 +129,167 @@ public class BoardTest {
                      0, b1.movesMade());
     }
 
+    /** Test that Board and ArrayBoard agree on legal moves and contiguity
+     *  throughout a number of random games. */
+    @Test
+    public void testAgreesWithArrayBoard() {
+        Random random = new Random(61);
+        for (int g = 0; g < 20; g += 1) {
+            Board b = new Board();
+            ArrayBoard a = new ArrayBoard();
+            while (!b.gameOver()) {
+                List<Move> moves = b.legalMoves();
+                assertEquals("legal moves", new HashSet<>(a.legalMoves()),
+                             new HashSet<>(moves));
+                for (Piece side : new Piece[] { BP, WP }) {
+                    assertEquals("region sizes", a.getRegionSizes(side),
+                                 b.getRegionSizes(side));
+                    assertEquals("contiguity", a.piecesContiguous(side),
+                                 b.piecesContiguous(side));
+                }
+                if (moves.isEmpty()) {
+                    break;
+                }
+                Move move = moves.get(random.nextInt(moves.size()));
+                b.makeMove(move);
+                a.makeMove(move);
+            }
+            assertEquals("game over", a.gameOver(), b.gameOver());
+        }
+    }
+
+    /** Test legal move generation on a general position. */
+    @Test
+    public void testLegalMoves1() {
+        Board b = new Board(BOARD1, BP);
+        List<Move> moves = b.legalMoves();
+        assertTrue("f3-d5 captures", moves.contains(mv("f3-d5", true)));
+        assertTrue("f3-h1", moves.contains(mv("f3-h1")));
+        assertFalse("f3-d1", moves.contains(mv("f3-d1")));
+        for (Move move : moves) {
+            assertTrue(move.toString(), b.isLegal(move));
+        }
+    }
+
+    /** Test that keys are maintained through moves and retractions. */
+    @Test
+    public void testKeys() {
+        Board b0 = new Board(BOARD1, BP);
+        Board b1 = new Board(BOARD1, BP);
+        long key0 = b0.key();
+        assertEquals("equal boards, equal keys", key0, b1.key());
+        assertNotEquals("side to move", key0, new Board(BOARD1, WP).key());
+        b1.makeMove(mv("f3-d5"));
+        assertNotEquals("key after move", key0, b1.key());
+        b0.set(sq("f3"), EMP);
+        b0.set(sq("d5"), BP, WP);
+        assertEquals("key after move matches setup", b0.key(), b1.key());
+        b1.retract();
+        assertEquals("key after retract", key0, b1.key());
+    }
+
+    /** Test that contiguity remains correct as moves are made and
+     *  retracted. */
+    @Test
+    public void testContiguityAfterRetract() {
+        Random random = new Random(1066);
+        Board b = new Board(BOARD1, BP);
+        for (int k = 0; k < 10 && !b.gameOver(); k += 1) {
+            for (Move move : b.legalMoves()) {
+                b.makeMove(move);
+                assertSameRegions(move.toString(), b);
+                b.retract();
+                assertSameRegions("retract " + move, b);
+            }
+            List<Move> moves = b.legalMoves();
+            b.makeMove(moves.get(random.nextInt(moves.size())));
+        }
+    }
+
+    /** Test that perft counts from the packed move generator agree with
+     *  counts made from ArrayBoard's move lists. */
+    @Test
+    public void testPerft() {
+        int[][] buffers = new int[3][Board.MAX_MOVES];
+        for (int depth = 1; depth <= 3; depth += 1) {
+            assertEquals("initial, depth " + depth,
+                         count(new ArrayBoard(), depth),
+                         Perft.perft(new Board(), depth, buffers));
+            assertEquals("board 1, depth " + depth,
+                         count(new ArrayBoard(new Board(BOARD1, BP)), depth),
+                         Perft.perft(new Board(BOARD1, BP), depth, buffers));
+        }
+    }
+
+    /** Return the number of positions reached by DEPTH moves from B, as
+     *  for Perft.perft. */
+    private static long count(Board b, int depth) {
+        if (depth == 0 || b.gameOver()) {
+            return 1;
+        }
+        long total = 0;
+        for (Move move : b.legalMoves()) {
+            b.makeMove(move);
+            total += count(b, depth - 1);
+            b.retract();
+        }
+        return total;
+    }
+
+    /** Test that the evaluation features Board maintains agree with
+     *  those computed from scratch as moves are made and retracted. */
+    @Test
+    public void testFeatures() {
+        Random random = new Random(1789);
+        for (int g = 0; g < 10; g += 1) {
+            Board b = new Board();
+            while (!b.gameOver()) {
+                for (Move move : b.legalMoves()) {
+                    b.makeMove(move);
+                    assertSameFeatures(move.toString(), b);
+                    b.retract();
+                }
+                assertSameFeatures("retracted", b);
+                List<Move> moves = b.legalMoves();
+                b.makeMove(moves.get(random.nextInt(moves.size())));
+            }
+        }
+    }
+
+    /** Test eulerQuads on simple patterns. */
+    @Test
+    public void testEulerQuads() {
+        long a1 = 1L, b2 = 1L << 9, c3 = 1L << 18, a3 = 1L << 16;
+        assertEquals("one piece", 4, Bits.eulerQuads(a1));
+        assertEquals("diagonal pair", 4, Bits.eulerQuads(a1 | b2));
+        assertEquals("separate pieces", 8, Bits.eulerQuads(a1 | c3));
+        assertEquals("diagonal line", 4, Bits.eulerQuads(a1 | b2 | c3));
+        assertEquals("empty", 0, Bits.eulerQuads(0));
+        assertEquals("ring", 0,
+                     Bits.eulerQuads(a1 | (1L << 1) | (1L << 2) | (1L << 8)
+                                     | (1L << 10) | a3 | (1L << 17) | c3));
+    }
+
+    /** Assert that the features of each side on B agree with those
+     *  computed from its piece masks, using MSG to identify the
+     *  failure. */
+    private static void assertSameFeatures(String msg, Board b) {
+        for (Piece side : new Piece[] { BP, WP }) {
+            for (int f = 0; f < Evaluator.NUM_FEATURES; f += 1) {
+                assertEquals(msg + " " + Evaluator.FEATURE_NAMES[f],
+                             EvalTiming.feature(b.pieces(side), f),
+                             Evaluator.feature(b, side, f));
+            }
+        }
+    }
+
+    /** Assert that B's contiguity tests and winner agree with those
+     *  computed from scratch, using MSG to identify the failure. */
+    private static void assertSameRegions(String msg, Board b) {
+        ArrayBoard a = new ArrayBoard(b);
+        assertEquals(msg, a.piecesContiguous(BP), b.piecesContiguous(BP));
+        assertEquals(msg, a.piecesContiguous(WP), b.piecesContiguous(WP));
+        assertEquals(msg, a.winner(), b.winner());
+    }
+
 }
@@ -0,0 +1,88 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Compares the speed of the bit-mask Board against ArrayBoard.  Usage:
+ *      java loa.BoardTiming [ GAMES ]
+ *  plays GAMES random games and then, for each kind of board, replays
+ *  them, generating every legal move at each position, making and
+ *  retracting each of those moves, and checking for the end of the game.
+ *  @author Tasman Kuang
+ */
+class BoardTiming {
+
+    /** Default number of games to replay. */
+    static final int DEFAULT_GAMES = 2000;
+
+    /** Random seed, for reproducible games. */
+    static final long SEED = 61;
+
+    /** Time the two board implementations on the number of games in
+     *  ARGS[0], or DEFAULT_GAMES if absent. */
+    public static void main(String... args) {
+        int numGames =
+            args.length == 0 ? DEFAULT_GAMES : Integer.parseInt(args[0]);
+        List<List<Move>> games = randomGames(numGames);
+        printTiming(new ArrayBoard(), games);
+        printTiming(new Board(), games);
+    }
+
+    /** Print the time taken to replay GAMES on BOARD. */
+    static void printTiming(Board board, List<List<Move>> games) {
+        replay(board, games);
+        long start = System.nanoTime();
+        long positions = replay(board, games);
+        double secs = (System.nanoTime() - start) * 1e-9;
+        System.out.printf("%s: %d positions in %.2f sec. (%.0f/sec.)%n",
+                          board.getClass().getSimpleName(), positions,
+                          secs, positions / secs);
+    }
+
+    /** Replay GAMES on BOARD, exercising move generation, make/unmake, and
+     *  the contiguity test at every position.  Returns the number of
+     *  positions visited. */
+    static long replay(Board board, List<List<Move>> games) {
+        long positions = 0;
+        for (List<Move> game : games) {
+            board.clear();
+            for (Move move : game) {
+                for (Move reply : board.legalMoves()) {
+                    board.makeMove(reply);
+                    board.gameOver();
+                    board.retract();
+                }
+                board.makeMove(move);
+                positions += 1;
+            }
+        }
+        return positions;
+    }
+
+    /** Return the moves of NUMGAMES random games from the initial
+     *  position. */
+    static List<List<Move>> randomGames(int numGames) {
+        Random random = new Random(SEED);
+        Board board = new Board();
+        List<List<Move>> games = new ArrayList<>();
+        for (int i = 0; i < numGames; i += 1) {
+            List<Move> game = new ArrayList<>();
+            board.clear();
+            while (!board.gameOver()) {
+                List<Move> moves = board.legalMoves();
+                if (moves.isEmpty()) {
+                    break;
+                }
+                Move move = moves.get(random.nextInt(moves.size()));
+                board.makeMove(move);
+                game.add(move);
+            }
+            games.add(game);
+        }
+        return games;
+    }
+
+}
@@ -0,0 +1,189 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static loa.Piece.*;
+
+/** A chess-style clock for the two sides of a game.  Each side starts
+ *  with a base time.  After each of its moves, its clock gains the
+ *  increment and, if there are moves per period, the base time again
+ *  at the end of each period.  Only the clock of the side to move runs.
+ *  A side whose time runs out before it moves has lost on time.
+ *  Times are in milliseconds.
+ *  @author Tasman Kuang
+ */
+class Clock {
+
+    /** Time kept in reserve by allocate, to cover the time between the
+     *  end of a search and the recording of its move. */
+    static final long SAFETY_MARGIN = 50;
+
+    /** Least time allocated to a move. */
+    static final long MIN_MOVE_TIME = 10;
+
+    /** Describes a time control: optional moves per period, base time in
+     *  seconds, and optional increment in seconds. */
+    private static final Pattern SPEC_PATN =
+        Pattern.compile("(?:(\\d+)/)?(\\d+\\.?\\d*)(?:\\+(\\d+\\.?\\d*))?");
+
+    /** A clock allowing BASE milliseconds, plus INCREMENT milliseconds
+     *  after each move and, if MOVESPERPERIOD > 0, BASE more every
+     *  MOVESPERPERIOD moves. */
+    Clock(long base, long increment, int movesPerPeriod) {
+        assert base > 0 && increment >= 0 && movesPerPeriod >= 0;
+        _base = base;
+        _increment = increment;
+        _movesPerPeriod = movesPerPeriod;
+        reset();
+    }
+
+    /** A clock with the same time control as CLOCK, reset. */
+    Clock(Clock clock) {
+        this(clock._base, clock._increment, clock._movesPerPeriod);
+    }
+
+    /** Return the clock described by SPEC, which has the form
+     *  [MOVES/]SECS[+INC]: SECS seconds of base time, renewed every
+     *  MOVES moves if MOVES is present, plus INC seconds per move.
+     *  Throws IllegalArgumentException if SPEC is malformed. */
+    static Clock parse(String spec) {
+        Matcher m = SPEC_PATN.matcher(spec);
+        if (!m.matches()) {
+            throw new IllegalArgumentException("invalid time control: "
+                                               + spec);
+        }
+        int moves = m.group(1) == null ? 0 : Integer.parseInt(m.group(1));
+        long base = Math.round(Double.parseDouble(m.group(2))
+                               * Game.MILLISEC);
+        long increment = m.group(3) == null ? 0
+            : Math.round(Double.parseDouble(m.group(3)) * Game.MILLISEC);
+        if (base <= 0 || m.group(1) != null && moves == 0) {
+            throw new IllegalArgumentException("invalid time control: "
+                                               + spec);
+        }
+        return new Clock(base, increment, moves);
+    }
+
+    /** Restore both sides' time to the base time, with no moves made and
+     *  neither clock running. */
+    void reset() {
+        _left[0] = _left[1] = _base;
+        _moves[0] = _moves[1] = 0;
+        _running = null;
+    }
+
+    /** Start SIDE's clock, if it is not already running.  Requires that
+     *  the other side's clock is not running. */
+    void start(Piece side) {
+        assert _running == null || _running == side;
+        if (_running == null) {
+            _running = side;
+            _started = System.currentTimeMillis();
+        }
+    }
+
+    /** Stop the running clock, if any, at the end of a move by its side,
+     *  adding the increment and any renewal of the base time.  Returns
+     *  false, adding nothing, if its time ran out first. */
+    boolean punch() {
+        Piece side = _running;
+        if (side == null) {
+            return true;
+        }
+        stop();
+        int k = index(side);
+        if (_left[k] <= 0) {
+            return false;
+        }
+        _moves[k] += 1;
+        _left[k] += _increment;
+        if (_movesPerPeriod > 0 && _moves[k] % _movesPerPeriod == 0) {
+            _left[k] += _base;
+        }
+        return true;
+    }
+
+    /** Stop the running clock, if any, without ending a move (as when
+     *  the game ends). */
+    void stop() {
+        if (_running != null) {
+            _left[index(_running)] -= System.currentTimeMillis() - _started;
+            _running = null;
+        }
+    }
+
+    /** Return the time left to SIDE, counting its clock if it is
+     *  running.  Not positive if its time has run out. */
+    long remaining(Piece side) {
+        long left = _left[index(side)];
+        if (_running == side) {
+            left -= System.currentTimeMillis() - _started;
+        }
+        return left;
+    }
+
+    /** Return the number of moves SIDE must make to finish its current
+     *  period, or 0 if there are no periods. */
+    int movesToGo(Piece side) {
+        if (_movesPerPeriod == 0) {
+            return 0;
+        }
+        return _movesPerPeriod - _moves[index(side)] % _movesPerPeriod;
+    }
+
+    /** Return the increment per move. */
+    long increment() {
+        return _increment;
+    }
+
+    /** Return the time SIDE should allow for its next move, given that
+     *  it has at most MOVESLEFT moves to make in the game: an equal share
+     *  of the time left until the next renewal (or the end of the game),
+     *  plus the increment, but never more than half the time left. */
+    long allocate(Piece side, int movesLeft) {
+        long left = remaining(side) - SAFETY_MARGIN;
+        int moves = Math.max(1, movesLeft);
+        if (movesToGo(side) > 0) {
+            moves = Math.min(moves, movesToGo(side));
+        }
+        long share = left / moves + _increment;
+        return Math.max(MIN_MOVE_TIME, Math.min(share, left / 2));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("white %s, black %s", format(remaining(WP)),
+                             format(remaining(BP)));
+    }
+
+    /** Return MILLIS in the form M:SS.S. */
+    private static String format(long millis) {
+        millis = Math.max(0, millis);
+        return String.format("%d:%04.1f", millis / 60000,
+                             (millis % 60000) / 1000.0);
+    }
+
+    /** Return the index of SIDE's entries in _left and _moves. */
+    private static int index(Piece side) {
+        return side == WP ? 0 : 1;
+    }
+
+    /** Base time per game or period. */
+    private final long _base;
+    /** Time added after each move. */
+    private final long _increment;
+    /** Moves per period, or 0 if the base time is for the whole game. */
+    private final int _movesPerPeriod;
+    /** Time left to each side, not counting a running clock. */
+    private final long[] _left = new long[2];
+    /** Moves made by each side. */
+    private final int[] _moves = new int[2];
+    /** The side whose clock is running, or null. */
+    private Piece _running;
+    /** Time at which _running's clock was started. */
+    private long _started;
+
+}
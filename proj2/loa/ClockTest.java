@@ -0,0 +1,42 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static loa.Piece.*;
+
+/** Tests of the Clock class.
+ *  @author Tasman Kuang
+ */
+public class ClockTest {
+
+    /** Test parsing of time controls and the accounting of a clock. */
+    @Test
+    public void testClock() {
+        Clock clock = Clock.parse("2/60+5");
+        assertEquals("base", 60000, clock.remaining(WP));
+        assertEquals("period", 2, clock.movesToGo(WP));
+        clock.start(WP);
+        assertTrue("in time", clock.punch());
+        assertTrue("increment", clock.remaining(WP) > 60000);
+        assertEquals("period after move", 1, clock.movesToGo(WP));
+        assertEquals("black untouched", 60000, clock.remaining(BP));
+        clock.start(WP);
+        clock.punch();
+        assertTrue("renewed", clock.remaining(WP) > 120000);
+        assertEquals("new period", 2, clock.movesToGo(WP));
+        long budget = clock.allocate(BP, 15);
+        assertTrue("budget", 0 < budget && budget <= 30000);
+        for (String bad : new String[] { "", "0", "0/60", "5+", "1:00" }) {
+            try {
+                Clock.parse(bad);
+                fail("accepted " + bad);
+            } catch (IllegalArgumentException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+}
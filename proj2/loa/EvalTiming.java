@@ -0,0 +1,126 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static loa.Piece.*;
+
+/** Measures the rate of static evaluation.  Usage:
+ *      java loa.EvalTiming [ GAMES [ ROUNDS ] ]
+ *  collects the positions of GAMES random games and evaluates each of
+ *  them ROUNDS times, first with Evaluator, which uses the features that
+ *  Board maintains incrementally, and then by computing the same
+ *  features from the board's piece masks alone, reporting evaluations
+ *  per second for each.  Each is first run once untimed, to give the JIT
+ *  compiler a chance to do its work.
+ *  @author Tasman Kuang
+ */
+class EvalTiming {
+
+    /** Default number of games. */
+    static final int DEFAULT_GAMES = 500;
+
+    /** Default number of times to evaluate each position. */
+    static final int DEFAULT_ROUNDS = 50;
+
+    /** Run the timings described by ARGS. */
+    public static void main(String... args) {
+        int numGames =
+            args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        int rounds =
+            args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROUNDS;
+        List<Board> positions = new ArrayList<>();
+        for (List<Move> game : BoardTiming.randomGames(numGames)) {
+            Board board = new Board();
+            for (Move move : game) {
+                board.makeMove(move);
+                if (!board.gameOver()) {
+                    positions.add(new Board(board));
+                }
+            }
+        }
+        Evaluator evaluator = new Evaluator();
+        for (Board board : positions) {
+            if (evaluator.evaluate(board) != fromScratch(evaluator, board)) {
+                throw new AssertionError("evaluations differ on\n" + board);
+            }
+        }
+        time("incremental", positions, rounds,
+             board -> evaluator.evaluate(board));
+        time("from scratch", positions, rounds,
+             board -> fromScratch(evaluator, board));
+    }
+
+    /** A method of evaluating a Board. */
+    interface Evaluation {
+        /** Return the value of BOARD. */
+        int value(Board board);
+    }
+
+    /** Print the rate at which EVAL evaluates POSITIONS, ROUNDS times
+     *  each, labeled with NAME. */
+    static void time(String name, List<Board> positions, int rounds,
+                     Evaluation eval) {
+        long check = 0;
+        for (Board board : positions) {
+            check += eval.value(board);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i += 1) {
+            for (Board board : positions) {
+                check += eval.value(board);
+            }
+        }
+        double secs = (System.nanoTime() - start) * 1e-9;
+        long evals = (long) rounds * positions.size();
+        System.out.printf("%s: %d evaluations in %.2f sec. (%.0f/sec.) "
+                          + "[%d]%n",
+                          name, evals, secs, evals / secs, check);
+    }
+
+    /** Return the value EVALUATOR gives BOARD, computing its features
+     *  from BOARD's piece masks rather than its running totals. */
+    static int fromScratch(Evaluator evaluator, Board board) {
+        int[] weights = evaluator.weights();
+        int value = 0;
+        for (int f = 0; f < Evaluator.NUM_FEATURES; f += 1) {
+            value += weights[f] * (feature(board.pieces(BP), f)
+                                   - feature(board.pieces(WP), f));
+        }
+        return value;
+    }
+
+    /** Return the value of Evaluator feature F for a side whose pieces
+     *  are PIECES, computed directly. */
+    static int feature(long pieces, int f) {
+        int n = 0, sumCol = 0, sumRow = 0, sumSquares = 0;
+        for (long rest = pieces; rest != 0; rest &= rest - 1) {
+            int sq = Long.numberOfTrailingZeros(rest);
+            int c = sq & 7, r = sq >>> 3;
+            n += 1;
+            sumCol += c;
+            sumRow += r;
+            sumSquares += c * c + r * r;
+        }
+        if (n == 0) {
+            return 0;
+        }
+        switch (f) {
+        case Evaluator.CONCENTRATION:
+            return 16 * (n * sumSquares - sumCol * sumCol - sumRow * sumRow)
+                / (n * n);
+        case Evaluator.EULER:
+            return Bits.eulerQuads(pieces);
+        case Evaluator.CENTRALIZATION:
+            int dc = 2 * sumCol - 7 * n, dr = 2 * sumRow - 7 * n;
+            return 16 * (dc * dc + dr * dr) / (4 * n * n);
+        case Evaluator.PIECES:
+            return n;
+        default:
+            throw new IllegalArgumentException("no such feature: " + f);
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import static loa.Piece.*;
+import static loa.Square.BOARD_SIZE;
+
+/** A static evaluation function for LOA positions: a weighted sum of
+ *  features, each the difference between its values for black and for
+ *  white (so that, like all values in the search, positive values favor
+ *  white when the weights are positive).  The features are computed
+ *  from quantities that Board keeps up to date as pieces move, so that
+ *  an evaluation takes constant time.
+ *  @author Tasman Kuang
+ */
+class Evaluator {
+
+    /** Feature numbers.  CONCENTRATION is 16 times the mean squared
+     *  distance of a side's pieces from their center of mass.  EULER is
+     *  Board.eulerQuads: four times the number of regions less holes.
+     *  CENTRALIZATION is 16 times the squared distance of the center of
+     *  mass from the center of the board.  PIECES is the number of
+     *  pieces. */
+    static final int
+        CONCENTRATION = 0,
+        EULER = 1,
+        CENTRALIZATION = 2,
+        PIECES = 3,
+        NUM_FEATURES = 4;
+
+    /** Names of the features, in order. */
+    static final String[] FEATURE_NAMES = {
+        "concentration", "euler", "centralization", "pieces"
+    };
+
+    /** Default weights of the features. */
+    static final int[] DEFAULT_WEIGHTS = { 6, 4, 1, 0 };
+
+    /** An Evaluator using DEFAULT_WEIGHTS. */
+    Evaluator() {
+        this(DEFAULT_WEIGHTS);
+    }
+
+    /** An Evaluator using WEIGHTS[F] as the weight of feature F. */
+    Evaluator(int[] weights) {
+        assert weights.length == NUM_FEATURES;
+        _weights = Arrays.copyOf(weights, NUM_FEATURES);
+    }
+
+    /** Return a copy of my weights. */
+    int[] weights() {
+        return Arrays.copyOf(_weights, NUM_FEATURES);
+    }
+
+    /** Return an Evaluator using the weights in FILE, which contains
+     *  lines of the form "NAME WEIGHT", where NAME is one of
+     *  FEATURE_NAMES, as written by write.  Blank lines and lines
+     *  starting with # are ignored, and features not mentioned get
+     *  weight 0.  Throws IOException if FILE cannot be read or is
+     *  malformed. */
+    static Evaluator read(File file) throws IOException {
+        int[] weights = new int[NUM_FEATURES];
+        try (BufferedReader input = new BufferedReader(new FileReader(file))) {
+            for (String line = input.readLine(); line != null;
+                 line = input.readLine()) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] words = line.split("\\s+");
+                int f = Arrays.asList(FEATURE_NAMES).indexOf(words[0]);
+                if (f < 0 || words.length != 2) {
+                    throw new IOException("bad weight: " + line);
+                }
+                try {
+                    weights[f] = Integer.parseInt(words[1]);
+                } catch (NumberFormatException excp) {
+                    throw new IOException("bad weight: " + line);
+                }
+            }
+        }
+        return new Evaluator(weights);
+    }
+
+    /** Write my weights to OUT in the form read by read. */
+    void write(PrintStream out) {
+        for (int f = 0; f < NUM_FEATURES; f += 1) {
+            out.printf("%s %d%n", FEATURE_NAMES[f], _weights[f]);
+        }
+    }
+
+    /** Return the value of BOARD, on which the game is not over (positive
+     *  favors white). */
+    int evaluate(Board board) {
+        int value = 0;
+        for (int f = 0; f < NUM_FEATURES; f += 1) {
+            if (_weights[f] != 0) {
+                value += _weights[f] * feature(board, f);
+            }
+        }
+        return value;
+    }
+
+    /** Return the value of feature F on BOARD: its value for black less
+     *  its value for white. */
+    static int feature(Board board, int f) {
+        return feature(board, BP, f) - feature(board, WP, f);
+    }
+
+    /** Return the value of feature F for SIDE's pieces on BOARD. */
+    static int feature(Board board, Piece side, int f) {
+        int n = board.pieceCount(side);
+        if (n == 0) {
+            return 0;
+        }
+        int sumCol = board.sumCol(side), sumRow = board.sumRow(side);
+        switch (f) {
+        case CONCENTRATION:
+            return SCALE * (n * board.sumSquares(side)
+                            - sumCol * sumCol - sumRow * sumRow) / (n * n);
+        case EULER:
+            return board.eulerQuads(side);
+        case CENTRALIZATION:
+            int dc = 2 * sumCol - (BOARD_SIZE - 1) * n,
+                dr = 2 * sumRow - (BOARD_SIZE - 1) * n;
+            return SCALE * (dc * dc + dr * dr) / (4 * n * n);
+        case PIECES:
+            return n;
+        default:
+            throw new IllegalArgumentException("no such feature: " + f);
+        }
+    }
+
+    /** Factor by which fractional features are scaled. */
+    private static final int SCALE = 16;
+
+    /** Weights of the features. */
+    private final int[] _weights;
+
+}
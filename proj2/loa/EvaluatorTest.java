@@ -0,0 +1,32 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the Evaluator class.
+ *  @author Tasman Kuang
+ */
+public class EvaluatorTest {
+
+    /** Test writing and reading evaluation weights. */
+    @Test
+    public void testWeightsFile() throws IOException {
+        int[] weights = { 5, -3, 0, 12 };
+        File file = File.createTempFile("weights", ".txt");
+        try {
+            try (PrintStream out = new PrintStream(file)) {
+                new Evaluator(weights).write(out);
+            }
+            assertArrayEquals(weights, Evaluator.read(file).weights());
+        } finally {
+            file.delete();
+        }
+    }
+
+}
@@ -145,6 +145,10 @@ class GUI extends TopLevel implements View, Reporter {
     public void reportMove(Move unused) {
     }
 
+    @Override
+    public void reportSearch(SearchStats unused) {
+    }
+
     /** The board widget. */
     private BoardWidget _widget;
 
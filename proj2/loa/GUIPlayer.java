@@ -58,6 +58,10 @@ class GUIPlayer extends Player implements Reporter {
     public void reportMove(Move unused) {
     }
 
+    @Override
+    public void reportSearch(SearchStats unused) {
+    }
+
     /** The GUI I use for input. */
     private GUI _gui;
 }
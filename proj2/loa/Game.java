@@ -2,7 +2,10 @@
  * University of California.  All rights reserved. */
 package loa;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Random;
 import java.util.Scanner;
 import java.util.regex.Pattern;
@@ -20,6 +23,11 @@ class Game {
 
     /** Number of milliseconds in 1 second. */
     static final int MILLISEC = 1000;
+    /** Default time allowed for each automated move, in milliseconds. */
+    static final int DEFAULT_MOVE_TIME = MILLISEC;
+    /** Most time that may be allowed for each automated move, in
+     *  seconds. */
+    static final double MAX_MOVE_TIME = 1e6;
     /** Name of help text resource. */
     static final String HELP_FILE = "loa/HelpText.txt";
 
@@ -46,6 +54,7 @@ class Game {
         _black = _manualPlayerTemplate.create(BP, this);
         _reporter = reporter;
         _strict = strict;
+        _moveTime = DEFAULT_MOVE_TIME;
     }
 
     /** Return the current board. */
@@ -53,6 +62,57 @@ class Game {
         return _board;
     }
 
+    /** Return the time allowed for each automated move, in milliseconds,
+     *  or 0 if there is no limit. */
+    long moveTime() {
+        return _moveTime;
+    }
+
+    /** Set the time allowed for each automated move to MILLIS
+     *  milliseconds (no limit if 0). */
+    void setMoveTime(long millis) {
+        assert millis >= 0;
+        _moveTime = millis;
+    }
+
+    /** Return the clock timing this game, or null if it is untimed. */
+    Clock clock() {
+        return _clock;
+    }
+
+    /** Time games with CLOCK (which is reset), or with no clock if CLOCK
+     *  is null.  Automated players then allocate their own time from the
+     *  clock, and a side whose time runs out loses. */
+    void setClock(Clock clock) {
+        _clock = clock;
+        if (_clock != null) {
+            _clock.reset();
+        }
+    }
+
+    /** Return true iff the current game is over, on the board or by
+     *  a side's running out of time. */
+    boolean gameOver() {
+        return _flagged != null || _board.gameOver();
+    }
+
+    /** Return the winner of the current game (EMP for a tie), or null
+     *  if it is not over. */
+    Piece winner() {
+        return _flagged != null ? _flagged.opposite() : _board.winner();
+    }
+
+    /** Append a record of each game played from the initial position
+     *  to RECORDER, or stop doing so if RECORDER is null. */
+    void setRecorder(GameRecord.Writer recorder) {
+        _recorder = recorder;
+    }
+
+    /** Return the player of SIDE's pieces (WP or BP). */
+    Player getPlayer(Piece side) {
+        return side == WP ? _white : _black;
+    }
+
     /** Quit the game. */
     private void quit() {
         System.exit(0);
@@ -103,6 +163,8 @@ class Game {
                 break;
             case "new":
                 _board.clear();
+                resetClock();
+                _setUp = false;
                 _playing = true;
                 break;
             case "dump":
@@ -112,7 +174,8 @@ class Game {
                 manualCommand(command.group(2).toLowerCase());
                 break;
             case "auto":
-                autoCommand(command.group(2).toLowerCase());
+                autoCommand(command.group(2).toLowerCase(),
+                            command.group(3).toLowerCase());
                 break;
             case "quit":
                 quit();
@@ -120,6 +183,12 @@ class Game {
             case "seed":
                 seedCommand(command.group(2));
                 break;
+            case "time":
+                timeCommand(command.group(2));
+                break;
+            case "clock":
+                clockCommand(command.group(2).toLowerCase());
+                break;
             case "set":
                 setCommand(command.group(2), command.group(3).toLowerCase(),
                            command.group(4).toLowerCase());
@@ -162,13 +231,21 @@ class Game {
         _reporter.reportMove(move);
     }
 
+    /** Report the summary STATS of an automated player's search by
+     *  calling reportSearch(STATS) on my reporter. */
+    void reportSearch(SearchStats stats) {
+        _reporter.reportSearch(stats);
+    }
+
     /** Set player PLAYER ("white" or "black") to be a manual player. */
     private void manualCommand(String player) {
         switch (player) {
         case "white":
+            _white.stop();
             _white = _manualPlayerTemplate.create(WP, this);
             break;
         case "black":
+            _black.stop();
             _black = _manualPlayerTemplate.create(BP, this);
             break;
         default:
@@ -176,14 +253,30 @@ class Game {
         }
     }
 
-    /** Set player PLAYER ("white" or "black") to be an automated player. */
-    private void autoCommand(String player) {
+    /** Make TEMPLATE the exemplar for automated players that use the
+     *  engine called NAME (see autoCommand). */
+    void setEngine(String name, Player template) {
+        _engines.put(name, template);
+    }
+
+    /** Set player PLAYER ("white" or "black") to be an automated player,
+     *  using the engine called ENGINE, or the default engine if ENGINE is
+     *  empty. */
+    private void autoCommand(String player, String engine) {
+        Player template =
+            engine.isEmpty() ? _autoPlayerTemplate : _engines.get(engine);
+        if (template == null) {
+            error("unknown engine: %s%n", engine);
+            return;
+        }
         switch (player) {
         case "white":
-            _white = _autoPlayerTemplate.create(WP, this);
+            _white.stop();
+            _white = template.create(WP, this);
             break;
         case "black":
-            _black = _autoPlayerTemplate.create(BP, this);
+            _black.stop();
+            _black = template.create(BP, this);
             break;
         default:
             error("unknown player: %s%n", player);
@@ -199,23 +292,101 @@ class Game {
         }
     }
 
+    /** Set the time allowed for each automated move to SECS seconds (no
+     *  limit if 0). */
+    private void timeCommand(String secs) {
+        try {
+            long limit = millis(Double.parseDouble(secs));
+            if (limit < 0) {
+                error("invalid time limit: %s%n", secs);
+            } else {
+                _moveTime = limit;
+            }
+        } catch (NumberFormatException excp) {
+            error("Invalid number: %s%n", secs);
+        }
+    }
+
+    /** Return SECS seconds in milliseconds, or -1 if SECS is not a
+     *  number between 0 and MAX_MOVE_TIME (as are NaN and
+     *  Infinity). */
+    static long millis(double secs) {
+        if (!(secs >= 0 && secs <= MAX_MOVE_TIME)) {
+            return -1;
+        }
+        return Math.round(secs * MILLISEC);
+    }
+
+    /** Set the time control to SPEC (as for Clock.parse), or remove it
+     *  if SPEC is "off", or report the time left if SPEC is empty.  A new
+     *  time control gives both sides their full base time. */
+    private void clockCommand(String spec) {
+        if (spec.isEmpty()) {
+            if (_clock == null) {
+                reportNote("No clock.");
+            } else {
+                reportNote("Time left: %s.", _clock);
+            }
+        } else if (spec.equals("off")) {
+            _clock = null;
+        } else {
+            try {
+                _clock = Clock.parse(spec);
+            } catch (IllegalArgumentException excp) {
+                error("%s%n", excp.getMessage());
+            }
+        }
+    }
+
+    /** Reset the clock, if any, for a new game. */
+    private void resetClock() {
+        _flagged = null;
+        if (_clock != null) {
+            _clock.reset();
+        }
+    }
+
     /** Set square S to CONTENT ('black', 'white', or '-'), and next player
-        to move to NEXTPLAYER: 'black' or 'white'. */
+        to move to NEXTPLAYER: 'black' or 'white'.  Since this may change
+        the side to move without a move, a running clock is stopped (its
+        side having used the time so far); the next move starts the clock
+        of whichever side is then to move. */
     private void setCommand(String S, String content, String nextPlayer) {
         try {
-            Piece p = Piece.playerValueOf(content);
-            Piece next = Piece.playerValueOf(nextPlayer);
-            if (next == EMP) {
-                error("invalid next player: -");
-            } else {
-                _board.set(sq(S), p, next);
+            setSquare(_board, S, content, nextPlayer);
+            _setUp = true;
+            if (_playing && _clock != null) {
+                _clock.stop();
             }
         } catch (IllegalArgumentException excp) {
-            error("invalid arguments to set: set %s %s %s%n", S, content,
-                  nextPlayer);
+            error("%s%n", excp.getMessage());
         }
     }
 
+    /** Set square S on BOARD to CONTENT ('black', 'white', or '-'), and
+     *  next player to move to NEXTPLAYER: 'black' or 'white', as for the
+     *  set command.  Throws IllegalArgumentException, describing the
+     *  problem, if the arguments are invalid. */
+    static void setSquare(Board board, String S, String content,
+                          String nextPlayer) {
+        Piece p, next;
+        Square s = sq(S);
+        try {
+            p = Piece.playerValueOf(content);
+            next = Piece.playerValueOf(nextPlayer);
+        } catch (IllegalArgumentException excp) {
+            next = p = null;
+        }
+        if (next == EMP) {
+            throw new IllegalArgumentException("invalid next player: -");
+        } else if (s == null || next == null) {
+            throw new IllegalArgumentException(
+                String.format("invalid arguments to set: set %s %s %s", S,
+                              content, nextPlayer));
+        }
+        board.set(s, p, next);
+    }
+
     /** Perform the move designated by LINE, if a valid move.  Return
      *  true iff LINE has the syntax of a move. */
     private boolean processMove(String line) {
@@ -237,18 +408,29 @@ class Game {
     /** Play this game, printing any results. */
     public void play() {
         _board = new Board();
+        resetClock();
+        _setUp = false;
         _playing = true;
 
         while (true) {
             try {
                 String next;
                 _view.update(this);
-                if (_board.gameOver() && _playing) {
+                if (gameOver() && _playing) {
                     announceWinner();
                     _playing = false;
+                } else if (_playing && _board.legalMoves().isEmpty()) {
+                    announceStuck();
+                    _playing = false;
                 }
-                if (_playing) {
-                    switch (_board.turn()) {
+                boolean moving = _playing;
+                int made = _board.movesMade();
+                if (moving) {
+                    Piece turn = _board.turn();
+                    if (_clock != null) {
+                        _clock.start(turn);
+                    }
+                    switch (turn) {
                     case WP:
                         next = _white.getMove();
                         break;
@@ -258,6 +440,12 @@ class Game {
                     default:
                         throw new Error("Unreachable statement");
                     }
+                    if (_clock != null && next != null
+                        && _clock.remaining(turn) <= 0) {
+                        _clock.stop();
+                        _flagged = turn;
+                        continue;
+                    }
                 } else {
                     next = _nonplayer.getMove();
                 }
@@ -266,21 +454,108 @@ class Game {
                 } else {
                     processCommand(next);
                 }
+                if (moving && _clock != null
+                    && _board.movesMade() == made + 1) {
+                    _clock.punch();
+                }
             } catch (IllegalArgumentException excp) {
                 System.err.printf("Error: %s%n", excp.getMessage());
             }
         }
     }
 
-    /** Print an announcement of the winner.  Requires that the game has been
-     *  won. */
+    /** Play one game without reading commands, between automated players
+     *  created from WHITETEMPLATE and BLACKTEMPLATE, starting from the
+     *  position reached by OPENING from the initial position.  Returns
+     *  the winner (EMP for a tie), which may have won on time if I have
+     *  a clock, or null if the game was abandoned because the side to
+     *  move had no legal moves.  Used to play many games at once without
+     *  a terminal, each in its own Game. */
+    Piece playMatch(Player whiteTemplate, Player blackTemplate,
+                    List<Move> opening) {
+        _white = whiteTemplate.create(WP, this);
+        _black = blackTemplate.create(BP, this);
+        _board = new Board();
+        for (Move move : opening) {
+            _board.makeMove(move);
+        }
+        resetClock();
+        _setUp = false;
+        _playing = true;
+        while (!gameOver()) {
+            _view.update(this);
+            Piece turn = _board.turn();
+            if (_board.legalMoves().isEmpty()) {
+                break;
+            }
+            if (_clock != null) {
+                _clock.start(turn);
+            }
+            Move move = mv(getPlayer(turn).getMove());
+            if (_clock != null && !_clock.punch()) {
+                _flagged = turn;
+                break;
+            }
+            if (move == null || !_board.isLegal(move)) {
+                throw new IllegalStateException("illegal move from "
+                                                + turn.fullName());
+            }
+            _board.makeMove(move);
+        }
+        _view.update(this);
+        _playing = false;
+        if (gameOver()) {
+            announceWinner();
+        } else {
+            announceStuck();
+        }
+        return winner();
+    }
+
+    /** Announce that the side to move has no legal moves, so that the
+     *  game, which is not over, is abandoned, and stop the players and
+     *  clock.  The game is not recorded. */
+    private void announceStuck() {
+        _white.stop();
+        _black.stop();
+        if (_clock != null) {
+            _clock.stop();
+        }
+        _reporter.reportNote("%s has no legal moves; game abandoned.",
+                             _board.turn() == BP ? "Black" : "White");
+    }
+
+    /** Print an announcement of the winner, and record the game if it was
+     *  played from the initial position and I have a recorder.  Requires
+     *  that the game has been won. */
     private void announceWinner() {
-        switch (_board.winner()) {
+        _white.stop();
+        _black.stop();
+        if (_clock != null) {
+            _clock.stop();
+        }
+        if (_recorder != null && !_setUp) {
+            try {
+                _recorder.write(_board,
+                                _flagged == null
+                                ? GameRecord.resultCode(_board.winner())
+                                : GameRecord.timeForfeitCode(_flagged),
+                                _white.description(),
+                                _black.description());
+                _recorder.flush();
+            } catch (IOException excp) {
+                _reporter.reportError("could not record game: %s",
+                                      excp.getMessage());
+            }
+        }
+        switch (winner()) {
         case BP:
-            _reporter.reportNote("Black wins.");
+            _reporter.reportNote(_flagged == null ? "Black wins."
+                                 : "Black wins on time.");
             break;
         case WP:
-            _reporter.reportNote("White wins.");
+            _reporter.reportNote(_flagged == null ? "White wins."
+                                 : "White wins on time.");
             break;
         default:
             _reporter.reportNote("Tie game.");
@@ -304,6 +579,8 @@ class Game {
 
     /** The current templates for manual and automated players. */
     private Player _autoPlayerTemplate, _manualPlayerTemplate;
+    /** Templates for automated players, indexed by engine name. */
+    private final HashMap<String, Player> _engines = new HashMap<>();
 
     /** Player of white pieces. */
     private Player _white;
@@ -324,6 +601,19 @@ class Game {
     /** The object that is displaying the current game. */
     private View _view;
 
+    /** Clock timing the game, or null if it is untimed. */
+    private Clock _clock;
+
+    /** The side that ran out of time in the current game, or null. */
+    private Piece _flagged;
+
+    /** Destination of game records, or null if absent. */
+    private GameRecord.Writer _recorder;
+
+    /** True iff the current game's position has been changed by a set
+     *  command, so that it cannot be recorded. */
+    private boolean _setUp;
+
     /** Log file, or null if absent. */
     private PrintStream _logFile;
 
@@ -336,4 +626,8 @@ class Game {
     /** If true, command errors cause termination with error exit
      *  code. */
     private boolean _strict;
+
+    /** Time allowed for each automated move, in milliseconds (0 for no
+     *  limit). */
+    private long _moveTime;
 }
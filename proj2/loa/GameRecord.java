@@ -0,0 +1,295 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import static loa.Piece.*;
+
+/** Compact binary records of games played from the initial position.
+ *  A file of records begins with MAGIC and VERSION (an int and a short),
+ *  followed by any number of games.  Each game consists of its result (a
+ *  byte: one of the RESULT_ codes, where a win on time is one in which
+ *  the side to move after the last move ran out of time), descriptions
+ *  of the white and black players (as for DataOutput.writeUTF), the
+ *  number of moves (a short), and the index() of each move (a short
+ *  each).  A Writer appends games to a file and a Reader reads them
+ *  back one at a time, reusing its storage so that any number of games
+ *  can be streamed through it.
+ *
+ *  The main program replays the games in files of records.  Usage:
+ *      java loa.GameRecord FILE ...
+ *  checks that each move is legal and each recorded result is the
+ *  actual one, and reports the number of games and moves replayed, the
+ *  rate of replay, and any games that fail to check.
+ *  @author Tasman Kuang
+ */
+class GameRecord {
+
+    /** Identifies a file of game records. */
+    static final int MAGIC = 0x4c4f4147;
+
+    /** Version of the record format. */
+    static final short VERSION = 1;
+
+    /** Result codes: the game was not finished, black won, white won, or
+     *  the game was tied. */
+    static final byte
+        RESULT_UNFINISHED = 0,
+        RESULT_BLACK = 1,
+        RESULT_WHITE = 2,
+        RESULT_TIE = 3,
+        RESULT_BLACK_ON_TIME = 4,
+        RESULT_WHITE_ON_TIME = 5;
+
+    /** Return the result code for a game whose winner() is WINNER. */
+    static byte resultCode(Piece winner) {
+        if (winner == null) {
+            return RESULT_UNFINISHED;
+        }
+        switch (winner) {
+        case BP:
+            return RESULT_BLACK;
+        case WP:
+            return RESULT_WHITE;
+        default:
+            return RESULT_TIE;
+        }
+    }
+
+    /** Return the result code for a game lost on time by LOSER. */
+    static byte timeForfeitCode(Piece loser) {
+        return loser == WP ? RESULT_BLACK_ON_TIME : RESULT_WHITE_ON_TIME;
+    }
+
+    /** Return true iff RESULT is the correct result code for the game
+     *  that has been played on BOARD. */
+    static boolean correctResult(Board board, byte result) {
+        if (board.gameOver()) {
+            return result == resultCode(board.winner());
+        }
+        return result == RESULT_UNFINISHED
+            || result == timeForfeitCode(board.turn());
+    }
+
+    /** Writes game records. */
+    static class Writer implements AutoCloseable {
+
+        /** A Writer that writes records to OUT, starting with the file
+         *  header. */
+        Writer(OutputStream out) throws IOException {
+            this(out, true);
+        }
+
+        /** A Writer that writes records to OUT, starting with the file
+         *  header iff HEADER. */
+        Writer(OutputStream out, boolean header) throws IOException {
+            _out = new DataOutputStream(new BufferedOutputStream(out));
+            if (header) {
+                _out.writeInt(MAGIC);
+                _out.writeShort(VERSION);
+            }
+        }
+
+        /** Write a record of the game that has been played on BOARD from
+         *  the initial position, between players described by WHITE and
+         *  BLACK.  May be called from several threads at once. */
+        void write(Board board, String white, String black)
+            throws IOException {
+            write(board, resultCode(board.winner()), white, black);
+        }
+
+        /** Write a record of the game that has been played on BOARD from
+         *  the initial position, between players described by WHITE and
+         *  BLACK, with result code RESULT.  May be called from several
+         *  threads at once. */
+        synchronized void write(Board board, byte result, String white,
+                                String black) throws IOException {
+            _out.writeByte(result);
+            _out.writeUTF(white);
+            _out.writeUTF(black);
+            _out.writeShort(board.movesMade());
+            for (int k = 0; k < board.movesMade(); k += 1) {
+                _out.writeShort(board.moveIndex(k));
+            }
+        }
+
+        /** Write any buffered records. */
+        synchronized void flush() throws IOException {
+            _out.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            _out.close();
+        }
+
+        /** Destination of the records. */
+        private final DataOutputStream _out;
+    }
+
+    /** Reads game records. */
+    static class Reader implements AutoCloseable {
+
+        /** A Reader of the records in IN, which must start with the file
+         *  header. */
+        Reader(InputStream in) throws IOException {
+            _in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+            if (_in.readInt() != MAGIC || _in.readShort() != VERSION) {
+                throw new IOException("not a file of game records");
+            }
+        }
+
+        /** Read the next game, returning false if there are no more. */
+        boolean next() throws IOException {
+            int result = _in.read();
+            if (result < 0) {
+                return false;
+            }
+            try {
+                _result = (byte) result;
+                _white = _in.readUTF();
+                _black = _in.readUTF();
+                _length = _in.readUnsignedShort();
+                if (_length > _moves.length) {
+                    _moves = Arrays.copyOf(_moves,
+                                           Math.max(_length,
+                                                    2 * _moves.length));
+                }
+                for (int k = 0; k < _length; k += 1) {
+                    _moves[k] = _in.readShort();
+                }
+            } catch (EOFException excp) {
+                throw new IOException("truncated game record");
+            }
+            return true;
+        }
+
+        /** Return the result code of the current game. */
+        byte result() {
+            return _result;
+        }
+
+        /** Return the description of the white player of the current
+         *  game. */
+        String white() {
+            return _white;
+        }
+
+        /** Return the description of the black player of the current
+         *  game. */
+        String black() {
+            return _black;
+        }
+
+        /** Return the number of moves in the current game. */
+        int length() {
+            return _length;
+        }
+
+        /** Return the index() of move K of the current game. */
+        int move(int k) {
+            return _moves[k];
+        }
+
+        /** Make the moves of the current game on BOARD, which is cleared
+         *  first.  Returns false, leaving BOARD after the last legal
+         *  move, if a move is illegal. */
+        boolean replay(Board board) {
+            board.clear();
+            for (int k = 0; k < _length; k += 1) {
+                Move move = Move.mv(_moves[k]);
+                if (move == null || board.gameOver()
+                    || !board.isLegal(move)) {
+                    return false;
+                }
+                board.makeMove(_moves[k]);
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _in.close();
+        }
+
+        /** Source of the records. */
+        private final DataInputStream _in;
+        /** Result code of the current game. */
+        private byte _result;
+        /** Descriptions of the players of the current game. */
+        private String _white, _black;
+        /** Number of moves in the current game. */
+        private int _length;
+        /** Moves of the current game. */
+        private short[] _moves = new short[2 * Board.DEFAULT_MOVE_LIMIT];
+    }
+
+    /** Return true iff FILE begins with the header of a file of game
+     *  records. */
+    static boolean isRecordFile(File file) throws IOException {
+        try (DataInputStream in =
+             new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException excp) {
+            return false;
+        }
+    }
+
+    /** Return a Writer appending to the file FILE, writing a header first
+     *  if FILE is new or empty. */
+    static Writer append(File file) throws IOException {
+        boolean fresh = !file.exists() || file.length() == 0;
+        return new Writer(new FileOutputStream(file, true), fresh);
+    }
+
+    /** Replay the games in the files named by ARGS. */
+    public static void main(String... args) {
+        if (args.length == 0) {
+            System.err.println("Usage: java loa.GameRecord FILE ...");
+            System.exit(1);
+        }
+        Board board = new Board();
+        long games, moves, bad;
+        games = moves = bad = 0;
+        long start = System.nanoTime();
+        for (String name : args) {
+            try (Reader reader = new Reader(new FileInputStream(name))) {
+                for (long n = 1; reader.next(); n += 1) {
+                    games += 1;
+                    moves += reader.length();
+                    if (!reader.replay(board)) {
+                        System.err.printf("%s: game %d: illegal move %d%n",
+                                          name, n, board.movesMade() + 1);
+                        bad += 1;
+                    } else if (!correctResult(board, reader.result())) {
+                        System.err.printf("%s: game %d: wrong result%n",
+                                          name, n);
+                        bad += 1;
+                    }
+                }
+            } catch (IOException excp) {
+                System.err.printf("%s: %s%n", name, excp.getMessage());
+                bad += 1;
+            }
+        }
+        double secs = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+        System.out.printf("%d games, %d moves in %.2f sec. "
+                          + "(%.0f games/sec., %.0f moves/sec.), "
+                          + "%d failed%n",
+                          games, moves, secs, games / secs, moves / secs, bad);
+        System.exit(bad == 0 ? 0 : 1);
+    }
+
+}
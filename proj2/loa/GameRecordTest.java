@@ -0,0 +1,59 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the GameRecord class.
+ *  @author Tasman Kuang
+ */
+public class GameRecordTest {
+
+    /** Test that random games written as game records read back and
+     *  replay to the same positions and results. */
+    @Test
+    public void testGameRecord() throws IOException {
+        Random random = new Random(61);
+        List<Board> games = new ArrayList<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GameRecord.Writer writer = new GameRecord.Writer(bytes);
+        for (int g = 0; g < 20; g += 1) {
+            Board b = new Board();
+            int[] moves = new int[Board.MAX_MOVES];
+            while (!b.gameOver()) {
+                b.makeMove(moves[random.nextInt(b.legalMoves(moves))]);
+            }
+            if (g % 5 == 0) {
+                b.retract();
+            }
+            writer.write(b, "white " + g, "black " + g);
+            games.add(b);
+        }
+        writer.close();
+
+        GameRecord.Reader reader = new GameRecord.Reader(
+            new ByteArrayInputStream(bytes.toByteArray()));
+        Board b = new Board();
+        for (Board game : games) {
+            assertTrue("game present", reader.next());
+            assertEquals("white", "white " + games.indexOf(game),
+                         reader.white());
+            assertTrue("replays", reader.replay(b));
+            assertEquals("same position", game, b);
+            assertEquals("same result",
+                         GameRecord.resultCode(game.winner()),
+                         reader.result());
+        }
+        assertFalse("no more games", reader.next());
+        reader.close();
+    }
+
+}
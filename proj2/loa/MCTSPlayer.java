@@ -0,0 +1,364 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static loa.Piece.*;
+import static loa.Utils.*;
+
+/** An automated Player that chooses moves by Monte Carlo tree search
+ *  rather than alpha-beta search.  Each playout descends the tree from
+ *  the current position, choosing moves by UCT (the upper confidence
+ *  bound on each move's mean result), adds a node when it reaches one
+ *  that has been visited before, and then plays PLAYOUT_PLIES random
+ *  moves.  A playout that does not end the game is scored by applying
+ *  a logistic function to the static evaluation of the position it
+ *  reaches.  Several threads may run playouts on the same tree; each
+ *  counts a "virtual loss" of VIRTUAL_LOSS visits with no reward at the
+ *  nodes on its path until its playout is finished, which steers the
+ *  other threads to different lines.  Plays the move visited most.
+ *  @author Tasman Kuang
+ */
+class MCTSPlayer extends Player {
+
+    /** Default number of playouts per move when there is no time
+     *  limit. */
+    static final int DEFAULT_PLAYOUTS = 20000;
+
+    /** Weight of the exploration term in UCT. */
+    static final double EXPLORATION = 0.3;
+
+    /** Number of visits without reward counted at each node on the path
+     *  of a playout in progress. */
+    static final int VIRTUAL_LOSS = 3;
+
+    /** Number of visits (including virtual losses) to a leaf after which
+     *  a playout reaching it adds its children to the tree. */
+    static final int EXPAND_VISITS = VIRTUAL_LOSS + 1;
+
+    /** Number of random moves in each playout. */
+    static final int PLAYOUT_PLIES = 2;
+
+    /** Evaluation at which a position counts as a win for white in
+     *  about 73% (1/(1+e^-1)) of playouts. */
+    static final double EVAL_SCALE = 150.0;
+
+    /** Rewards are kept in units of 1/REWARD_UNIT. */
+    static final long REWARD_UNIT = 1 << 16;
+
+    /** A new MCTSPlayer with no piece or controller (intended to produce
+     *  a template). */
+    MCTSPlayer() {
+        this(null, null);
+    }
+
+    /** An MCTSPlayer that plays the SIDE pieces in GAME. */
+    MCTSPlayer(Piece side, Game game) {
+        super(side, game);
+        _threads = 1;
+        _playoutLimit = DEFAULT_PLAYOUTS;
+        _evaluator = new Evaluator();
+    }
+
+    /** An MCTSPlayer that plays the SIDE pieces in GAME, with the same
+     *  settings as TEMPLATE. */
+    MCTSPlayer(Piece side, Game game, MCTSPlayer template) {
+        this(side, game);
+        _threads = template._threads;
+        _playoutLimit = template._playoutLimit;
+        _evaluator = template._evaluator;
+    }
+
+    /** Run playouts in THREADS > 0 threads (as will players I create). */
+    void setThreads(int threads) {
+        assert threads > 0;
+        shutdown();
+        _threads = threads;
+    }
+
+    /** Run PLAYOUTS > 0 playouts per move (as will players I create) when
+     *  there is no time limit. */
+    void setPlayouts(int playouts) {
+        assert playouts > 0;
+        _playoutLimit = playouts;
+    }
+
+    /** Stop any helper threads I have started. */
+    void shutdown() {
+        if (_pool != null) {
+            _pool.shutdownNow();
+            _pool = null;
+        }
+    }
+
+    @Override
+    String getMove() {
+        assert side() == getGame().getBoard().turn();
+        Move choice = searchForMove(getBoard(), moveTime());
+        getGame().reportMove(choice);
+        return choice.toString();
+    }
+
+    @Override
+    Player create(Piece piece, Game game) {
+        return new MCTSPlayer(piece, game, this);
+    }
+
+    @Override
+    boolean isManual() {
+        return false;
+    }
+
+    @Override
+    String description() {
+        return String.format("mcts threads=%d playouts=%d", _threads,
+                             _playoutLimit);
+    }
+
+    /** Return a move for the side to move on BOARD after running playouts
+     *  for LIMIT milliseconds, or, if LIMIT <= 0, until my playout limit
+     *  is reached, or null if the side to move has no legal moves.
+     *  Assumes the game is not over. */
+    Move searchForMove(Board board, long limit) {
+        if (board.legalMoves().isEmpty()) {
+            return null;
+        }
+        if (_pool == null && _threads > 1) {
+            _pool = Executors.newFixedThreadPool(_threads - 1, r -> {
+                Thread thread = new Thread(r, "loa-mcts");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        _rootBoard = new Board(board);
+        _root = new Node(0, null);
+        _count.set(0);
+        long start = System.currentTimeMillis();
+        long deadline = Utils.deadline(start, limit);
+        long maxPlayouts = limit <= 0 ? _playoutLimit : Long.MAX_VALUE;
+
+        List<Future<?>> helpers = new ArrayList<>();
+        for (int i = 1; i < _threads; i += 1) {
+            helpers.add(_pool.submit(() -> runPlayouts(deadline,
+                                                       maxPlayouts)));
+        }
+        runPlayouts(deadline, maxPlayouts);
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new Error("playout thread failed", excp);
+            }
+        }
+
+        Node best = null;
+        for (Node child : _root.children) {
+            if (best == null || child.visits.get() > best.visits.get()) {
+                best = child;
+            }
+        }
+        long millis = System.currentTimeMillis() - start;
+        _playouts = _count.get();
+        _totalPlayouts += _playouts;
+        _totalTime += millis;
+        debug(1, "%s: %s, %d playouts in %d ms (%.0f playouts/sec.), "
+              + "%d visits, mean result %.3f",
+              board.turn().fullName(), Move.mv(best.move), _playouts, millis,
+              millis == 0 ? 0.0 : 1000.0 * _playouts / millis,
+              best.visits.get(), best.meanReward());
+        return Move.mv(best.move);
+    }
+
+    /** Return the number of playouts in my last search. */
+    long playouts() {
+        return _playouts;
+    }
+
+    /** Return the total number of playouts in all my searches. */
+    long totalPlayouts() {
+        return _totalPlayouts;
+    }
+
+    /** Return the total time taken by all my searches, in
+     *  milliseconds. */
+    long totalTime() {
+        return _totalTime;
+    }
+
+    /** Run playouts from _rootBoard until time DEADLINE (as for
+     *  System.currentTimeMillis) or until a total of MAXPLAYOUTS have
+     *  been run by all threads. */
+    private void runPlayouts(long deadline, long maxPlayouts) {
+        Board board = new Board();
+        int[] moves = new int[Board.MAX_MOVES];
+        List<Node> path = new ArrayList<>();
+        Random random = ThreadLocalRandom.current();
+        for (long n = 0; ; n += 1) {
+            if (_count.getAndIncrement() >= maxPlayouts
+                || ((n & CLOCK_MASK) == CLOCK_MASK
+                    && System.currentTimeMillis() >= deadline)) {
+                _count.decrementAndGet();
+                return;
+            }
+            playout(board, moves, path, random);
+        }
+    }
+
+    /** Run one playout, using BOARD, MOVES, PATH, and RANDOM as scratch
+     *  space, and record its result in the tree. */
+    private void playout(Board board, int[] moves, List<Node> path,
+                         Random random) {
+        board.copyFrom(_rootBoard);
+        path.clear();
+        Node node = _root;
+        path.add(node);
+        while (!board.gameOver()) {
+            Node[] children = node.children;
+            if (children == null) {
+                if (node != _root && node.visits.get() < EXPAND_VISITS) {
+                    break;
+                }
+                children = expand(node, board, moves);
+            }
+            node = select(node, children);
+            node.visits.addAndGet(VIRTUAL_LOSS);
+            board.makeMove(node.move);
+            path.add(node);
+        }
+
+        double white = result(board, moves, random);
+        _root.visits.incrementAndGet();
+        for (int i = 1; i < path.size(); i += 1) {
+            Node n = path.get(i);
+            double reward = n.mover == WP ? white : 1.0 - white;
+            n.reward.addAndGet(Math.round(reward * REWARD_UNIT));
+            n.visits.addAndGet(1 - VIRTUAL_LOSS);
+        }
+    }
+
+    /** Add nodes for the legal moves on BOARD as the children of NODE,
+     *  unless another thread has done so, using MOVES as scratch space.
+     *  Return the children. */
+    private Node[] expand(Node node, Board board, int[] moves) {
+        synchronized (node) {
+            if (node.children == null) {
+                int n = board.legalMoves(moves);
+                Node[] children = new Node[n];
+                for (int i = 0; i < n; i += 1) {
+                    children[i] = new Node(moves[i], board.turn());
+                }
+                node.children = children;
+            }
+            return node.children;
+        }
+    }
+
+    /** Return the child among CHILDREN of PARENT with the greatest upper
+     *  confidence bound, or the first that has not been visited. */
+    private Node select(Node parent, Node[] children) {
+        double logVisits = Math.log(Math.max(1, parent.visits.get()));
+        Node best = null;
+        double bestBound = Double.NEGATIVE_INFINITY;
+        for (Node child : children) {
+            int visits = child.visits.get();
+            if (visits == 0) {
+                return child;
+            }
+            double bound = child.meanReward()
+                + EXPLORATION * Math.sqrt(logVisits / visits);
+            if (bound > bestBound) {
+                best = child;
+                bestBound = bound;
+            }
+        }
+        return best;
+    }
+
+    /** Play up to PLAYOUT_PLIES random moves on BOARD, using MOVES as
+     *  scratch space and choosing moves with RANDOM, and return the
+     *  result for white: 1 for a win, 0 for a loss, 0.5 for a tie, or
+     *  an estimate between 0 and 1 if the game has not ended. */
+    private double result(Board board, int[] moves, Random random) {
+        for (int ply = 0; ply < PLAYOUT_PLIES && !board.gameOver();
+             ply += 1) {
+            int n = board.legalMoves(moves);
+            if (n == 0) {
+                break;
+            }
+            board.makeMove(moves[random.nextInt(n)]);
+        }
+        Piece winner = board.winner();
+        if (winner == WP) {
+            return 1.0;
+        } else if (winner == BP) {
+            return 0.0;
+        } else if (winner == EMP) {
+            return 0.5;
+        }
+        return 1.0 / (1.0 + Math.exp(-_evaluator.evaluate(board)
+                                     / EVAL_SCALE));
+    }
+
+    /** A node of the search tree: a move and the results of the playouts
+     *  that made it. */
+    private static class Node {
+        /** A node for the move whose index() is MOVE, made by MOVER. */
+        Node(int move, Piece mover) {
+            this.move = move;
+            this.mover = mover;
+        }
+
+        /** Return the mean reward per visit, counting virtual losses. */
+        double meanReward() {
+            int n = visits.get();
+            return n == 0 ? 0.0 : (double) reward.get() / (REWARD_UNIT * n);
+        }
+
+        /** The index() of my move, or 0 for the root. */
+        final int move;
+        /** The side that made my move, or null for the root. */
+        final Piece mover;
+        /** Nodes for the legal moves after mine, or null if not yet
+         *  expanded. */
+        volatile Node[] children;
+        /** Number of playouts through me, plus virtual losses. */
+        final AtomicInteger visits = new AtomicInteger();
+        /** Total reward to mover over those playouts, in units of
+         *  1/REWARD_UNIT. */
+        final AtomicLong reward = new AtomicLong();
+    }
+
+    /** Check the clock once every CLOCK_MASK + 1 playouts. */
+    private static final int CLOCK_MASK = 15;
+
+    /** Number of threads running playouts. */
+    private int _threads;
+    /** Number of playouts per move when there is no time limit. */
+    private int _playoutLimit;
+    /** Static evaluation used to score unfinished playouts. */
+    private Evaluator _evaluator;
+    /** Threads that run playouts alongside the one calling getMove, or
+     *  null if not yet created. */
+    private ExecutorService _pool;
+    /** The position being searched. */
+    private Board _rootBoard;
+    /** Root of the search tree. */
+    private Node _root;
+    /** Number of playouts started by all threads in the current search. */
+    private final AtomicLong _count = new AtomicLong();
+    /** Number of playouts in my last search. */
+    private long _playouts;
+    /** Number of playouts and milliseconds taken by all my searches. */
+    private long _totalPlayouts, _totalTime;
+
+}
@@ -0,0 +1,40 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static loa.Piece.*;
+
+/** Tests of the MCTSPlayer class.
+ *  @author Tasman Kuang
+ */
+public class MCTSPlayerTest {
+
+    /** Test that Monte Carlo tree search, with several threads, chooses
+     *  a legal move. */
+    @Test
+    public void testMCTSMove() {
+        Board b = new Board(BoardTest.BOARD1, BP);
+        MCTSPlayer player = new MCTSPlayer();
+        player.setThreads(2);
+        player.setPlayouts(500);
+        Move move = player.searchForMove(b, 0);
+        player.shutdown();
+        assertTrue("legal MCTS move", b.isLegal(move));
+        assertEquals("playouts", 500, player.playouts());
+    }
+
+    /** Test that Monte Carlo tree search yields null in a position with
+     *  no legal moves. */
+    @Test
+    public void testNoLegalMoves() {
+        Board b = new Board(SearcherTest.STUCK, BP);
+        MCTSPlayer player = new MCTSPlayer();
+        player.setPlayouts(100);
+        assertNull("MCTS move", player.searchForMove(b, 0));
+        player.shutdown();
+    }
+
+}
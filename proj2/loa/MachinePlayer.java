@@ -2,18 +2,41 @@
  * University of California.  All rights reserved. */
 package loa;
 
-import static loa.Piece.*;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static loa.Utils.*;
 
 /** An automated Player.
  *  @author Tasman Kuang
  */
 class MachinePlayer extends Player {
 
-    /** A position-score magnitude indicating a win (for white if positive,
-     *  black if negative). */
-    private static final int WINNING_VALUE = Integer.MAX_VALUE - 20;
-    /** A magnitude greater than a normal value. */
-    private static final int INFTY = Integer.MAX_VALUE;
+    /** Default size of the transposition table, in bytes. */
+    static final long DEFAULT_TABLE_BYTES = 16L << 20;
+
+    /** Default limit on search depth. */
+    static final int MAX_DEPTH = Searcher.MAX_DEPTH;
+
+    /** Default limit on the positions visited by the proof-number solver
+     *  for one move. */
+    static final long DEFAULT_SOLVER_NODES = 100000;
+
+    /** The solver is tried when at most SOLVER_PIECES pieces remain, or
+     *  when my last search found a value at least DECISIVE_VALUE in
+     *  magnitude. */
+    static final int SOLVER_PIECES = 16, DECISIVE_VALUE = 300;
+
+    /** The solver may use at most 1/SOLVER_TIME_FRACTION of the time for
+     *  a move. */
+    static final int SOLVER_TIME_FRACTION = 4;
 
     /** A new MachinePlayer with no piece or controller (intended to produce
      *  a template). */
@@ -24,6 +47,90 @@ class MachinePlayer extends Player {
     /** A MachinePlayer that plays the SIDE pieces in GAME. */
     MachinePlayer(Piece side, Game game) {
         super(side, game);
+        _tableBytes = DEFAULT_TABLE_BYTES;
+        _maxDepth = MAX_DEPTH;
+        _threads = 1;
+        _evaluator = new Evaluator();
+        _solverNodes = DEFAULT_SOLVER_NODES;
+    }
+
+    /** A MachinePlayer that plays the SIDE pieces in GAME, with the same
+     *  settings as TEMPLATE. */
+    MachinePlayer(Piece side, Game game, MachinePlayer template) {
+        this(side, game);
+        _tableBytes = template._tableBytes;
+        _maxDepth = template._maxDepth;
+        _threads = template._threads;
+        _evaluator = template._evaluator;
+        _searchLog = template._searchLog;
+        _ponder = template._ponder;
+        _book = template._book;
+        _solverNodes = template._solverNodes;
+    }
+
+    /** Limit my transposition table (and those of players I create) to
+     *  BYTES bytes. */
+    void setTableSize(long bytes) {
+        shutdown();
+        _tableBytes = bytes;
+        _table = null;
+    }
+
+    /** Limit my searches (and those of players I create) to DEPTH
+     *  levels, 1 <= DEPTH <= MAX_DEPTH. */
+    void setMaxDepth(int depth) {
+        assert 1 <= depth && depth <= MAX_DEPTH;
+        _maxDepth = depth;
+    }
+
+    /** Search with THREADS > 0 threads (as will players I create). */
+    void setThreads(int threads) {
+        assert threads > 0;
+        shutdown();
+        _threads = threads;
+    }
+
+    /** Let the proof-number solver visit up to NODES positions per move
+     *  (as will players I create), or never use it if NODES is 0. */
+    void setSolverNodes(long nodes) {
+        assert nodes >= 0;
+        _solverNodes = nodes;
+    }
+
+    /** Evaluate positions (as will players I create) with EVALUATOR. */
+    void setEvaluator(Evaluator evaluator) {
+        shutdown();
+        _evaluator = evaluator;
+    }
+
+    /** Append a summary of each of my searches (and of those of players
+     *  I create) to LOG as a line of JSON, or stop doing so if LOG is
+     *  null. */
+    void setSearchLog(PrintStream log) {
+        _searchLog = log;
+    }
+
+    /** Iff PONDER, think about my next move (as will players I create)
+     *  while a manual opponent is choosing theirs. */
+    void setPondering(boolean ponder) {
+        _ponder = ponder;
+    }
+
+    /** Play the moves in BOOK (as will players I create) when it has
+     *  one for the current position, or search every position if BOOK is
+     *  null. */
+    void setBook(OpeningBook book) {
+        _book = book;
+    }
+
+    /** Stop any helper threads I have started. */
+    void shutdown() {
+        stop();
+        if (_pool != null) {
+            _pool.shutdownNow();
+            _pool = null;
+        }
+        _searchers = null;
     }
 
     @Override
@@ -31,15 +138,42 @@ class MachinePlayer extends Player {
         Move choice;
 
         assert side() == getGame().getBoard().turn();
-        int depth;
-        choice = searchForMove();
+        long limit = moveTime();
+        choice = finishPondering(getBoard(), limit);
+        boolean fromBook = false;
+        if (choice == null && _book != null) {
+            choice = _book.lookup(getBoard());
+            fromBook = choice != null;
+        }
+        if (fromBook) {
+            debug(1, "%s: book move %s", side().fullName(), choice);
+        } else {
+            if (choice == null) {
+                choice = searchForMove(getBoard(), limit);
+            }
+            getGame().reportSearch(_stats);
+        }
         getGame().reportMove(choice);
+        Player opponent = getGame().getPlayer(side().opposite());
+        if (_ponder && !fromBook && opponent != null && opponent.isManual()) {
+            startPondering(getBoard(), choice);
+        }
         return choice.toString();
     }
 
+    @Override
+    void stop() {
+        if (_pondering != null) {
+            _stop.set(true);
+            waitFor(_pondering);
+            waitForAll(_ponderHelpers);
+            _pondering = null;
+        }
+    }
+
     @Override
     Player create(Piece piece, Game game) {
-        return new MachinePlayer(piece, game);
+        return new MachinePlayer(piece, game, this);
     }
 
     @Override
@@ -47,42 +181,318 @@ class MachinePlayer extends Player {
         return false;
     }
 
-    /** Return a move after searching the game tree to DEPTH>0 moves
-     *  from the current position. Assumes the game is not over. */
-    private Move searchForMove() {
-        Board work = new Board(getBoard());
-        int value;
-        assert side() == work.turn();
-        _foundMove = null;
-        if (side() == WP) {
-            value = findMove(work, chooseDepth(), true, 1, -INFTY, INFTY);
+    @Override
+    String description() {
+        return String.format("alphabeta depth=%d threads=%d hash=%dMB "
+                             + "solver=%d%s", _maxDepth, _threads,
+                             _tableBytes >> 20, _solverNodes,
+                             _book == null ? "" : " book");
+    }
+
+    /** Return a move for the side to move on BOARD after searching for at
+     *  most LIMIT milliseconds (no limit if LIMIT <= 0).  The first of
+     *  my threads searches by iterative deepening until its time or
+     *  depth limit is reached; any others search the same position at
+     *  the same time, sharing its transposition table, until the first
+     *  finishes.  Near the end of the game, or when the position looks
+     *  decisive, first tries the proof-number solver, playing the move
+     *  it finds if it proves a win.  Returns null, without searching, if
+     *  the side to move has no legal moves.  Assumes the game is not
+     *  over. */
+    Move searchForMove(Board board, long limit) {
+        if (board.legalMoves().isEmpty()) {
+            _stats = null;
+            _nodes = 0;
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        int solved = -1;
+        if (worthSolving(board)) {
+            if (_solver == null) {
+                _solver = new Solver();
+            }
+            solved = _solver.solve(board, _solverNodes,
+                                   Utils.deadline(start, limit
+                                                  / SOLVER_TIME_FRACTION));
+            if (solved == Solver.WIN) {
+                Move win = _solver.winningMove();
+                SearchStats stats =
+                    new SearchStats(board.turn(), win,
+                                    System.currentTimeMillis() - start);
+                stats.setSolverResult(solved, _solver.nodes());
+                logSearch(stats);
+                return win;
+            }
+        }
+        if (_searchers == null) {
+            startSearchers();
+        }
+        _table.newSearch();
+        _stop.set(false);
+        _deadline.set(Utils.deadline(start, limit));
+
+        List<Future<?>> helpers = startHelpers(board);
+        Searcher main = _searchers[0];
+        Move best = main.search(board, 1, _maxDepth);
+        _stop.set(true);
+        waitForAll(helpers);
+        recordSearch(board.turn(), best, _searchers, start, solved);
+        return best;
+    }
+
+    /** Start all but the first of my Searchers searching BOARD in my
+     *  pool, alternating their first depths, until _stop is set, and
+     *  return their tasks. */
+    private List<Future<?>> startHelpers(Board board) {
+        List<Future<?>> helpers = new ArrayList<>();
+        for (int i = 1; i < _threads; i += 1) {
+            Searcher helper = _searchers[i];
+            int firstDepth = 1 + i % 2;
+            helpers.add(_pool.submit(() -> helper.search(board, firstDepth,
+                                                         _maxDepth)));
+        }
+        return helpers;
+    }
+
+    /** Return true iff I should try the proof-number solver on BOARD. */
+    private boolean worthSolving(Board board) {
+        if (_solverNodes == 0) {
+            return false;
+        }
+        int pieces = board.pieceCount(Piece.BP) + board.pieceCount(Piece.WP);
+        return pieces <= SOLVER_PIECES
+            || _stats != null && Math.abs(_stats.value()) >= DECISIVE_VALUE;
+    }
+
+    /** Start searching, in the background, the position that will arise
+     *  if the opponent makes the reply to my MOVE from BOARD that my last
+     *  search predicted.  BOARD is not changed. */
+    private void startPondering(Board board, Move move) {
+        if (_searchers == null) {
+            startSearchers();
+        }
+        Board next = new Board(board);
+        next.makeMove(move);
+        if (next.gameOver()) {
+            return;
+        }
+        List<Move> line = _stats.principalVariation();
+        Move reply;
+        if (line.size() > 1 && line.get(0) == move) {
+            reply = line.get(1);
         } else {
-            value = findMove(work, chooseDepth(), true, -1, -INFTY, INFTY);
+            long entry = _table.probe(next.key());
+            reply = entry == 0 ? null : TranspositionTable.move(entry);
+        }
+        if (reply == null || !next.isLegal(reply)) {
+            return;
+        }
+        next.makeMove(reply);
+        if (next.gameOver()) {
+            return;
+        }
+        _ponderBoard = next;
+        _table.newSearch();
+        _stop.set(false);
+        _deadline.set(Long.MAX_VALUE);
+        _ponderStart = System.currentTimeMillis();
+        Searcher main = _searchers[0];
+        _pondering = _pool.submit(() -> main.search(next, 1, _maxDepth));
+        _ponderHelpers = startHelpers(next);
+        debug(1, "%s: pondering %s", side().fullName(), reply);
+    }
+
+    /** If I have been pondering, finish: if my opponent made the predicted
+     *  move, so that the position is BOARD, let the search continue for
+     *  up to LIMIT more milliseconds (no limit if LIMIT <= 0) and return
+     *  its result.  Otherwise abandon it and return null. */
+    private Move finishPondering(Board board, long limit) {
+        if (_pondering == null) {
+            return null;
+        }
+        Future<Move> pondering = _pondering;
+        _pondering = null;
+        if (board.key() != _ponderBoard.key()
+            || board.movesMade() != _ponderBoard.movesMade()
+            || !board.equals(_ponderBoard)) {
+            _stop.set(true);
+            waitFor(pondering);
+            waitForAll(_ponderHelpers);
+            _ponderMisses += 1;
+            debug(1, "%s: ponder miss", side().fullName());
+            return null;
+        }
+        _ponderHits += 1;
+        _deadline.set(Utils.deadline(System.currentTimeMillis(), limit));
+        Move best = waitFor(pondering);
+        _stop.set(true);
+        waitForAll(_ponderHelpers);
+        debug(1, "%s: ponder hit", side().fullName());
+        recordSearch(board.turn(), best, _searchers, _ponderStart, -1);
+        return best;
+    }
+
+    /** Return the result of TASK, once it is done. */
+    private static <T> T waitFor(Future<T> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new Error("search thread failed", excp);
+        }
+    }
+
+    /** Wait for each of TASKS to be done. */
+    private static void waitForAll(List<Future<?>> tasks) {
+        for (Future<?> task : tasks) {
+            waitFor(task);
         }
-        return _foundMove;
     }
 
-    /** Find a move from position BOARD and return its value, recording
-     *  the move found in _foundMove iff SAVEMOVE. The move
-     *  should have maximal value or have value > BETA if SENSE==1,
-     *  and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     *  DEPTH levels.  Searching at level 0 simply returns a static estimate
-     *  of the board value and does not set _foundMove. If the game is over
-     *  on BOARD, does not set _foundMove. */
-    private int findMove(Board board, int depth, boolean saveMove,
-                         int sense, int alpha, int beta) {
-        if (saveMove) {
-            _foundMove = null;
+    /** Record statistics for a search by SEARCHERS (the first of which
+     *  is the main one) for SIDE, started at time START, that found
+     *  BEST, after the solver produced SOLVED (as for Solver.solve), or
+     *  -1 if it was not tried. */
+    private void recordSearch(Piece side, Move best, Searcher[] searchers,
+                              long start, int solved) {
+        long millis = System.currentTimeMillis() - start;
+        SearchStats stats =
+            new SearchStats(side, best, searchers[0], searchers, millis);
+        if (solved >= 0) {
+            stats.setSolverResult(solved, _solver.nodes());
         }
-        return 0;
+        logSearch(stats);
     }
 
-    /** Return a search depth for the current position. */
-    private int chooseDepth() {
-        return 1;
+    /** Make STATS the summary of my last search, and report and log
+     *  it. */
+    private void logSearch(SearchStats stats) {
+        _stats = stats;
+        _nodes = _stats.nodes();
+        _totalNodes += _nodes;
+        _totalTime += _stats.millis();
+        debug(1, "%s", _stats);
+        if (_searchLog != null) {
+            _searchLog.println(_stats.toJSON());
+        }
+    }
+
+    /** Return the total number of positions visited by all my threads
+     *  during my last search. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return a summary of my last search, or null if none. */
+    SearchStats searchStats() {
+        return _stats;
+    }
+
+    /** Return the number of times my opponent made the move I pondered,
+     *  and the number of times they did not, in that order. */
+    int[] ponderResults() {
+        return new int[] { _ponderHits, _ponderMisses };
+    }
+
+    /** Return the total number of positions visited by all my searches. */
+    long totalNodes() {
+        return _totalNodes;
+    }
+
+    /** Return the total time taken by all my searches, in
+     *  milliseconds. */
+    long totalTime() {
+        return _totalTime;
+    }
+
+    /** Forget what my earlier searches learned: the contents of my
+     *  transposition table and solver, my Searchers' move-ordering
+     *  statistics, and the results of my last search, so that my next
+     *  search does not depend on them.  Must not be called while I am
+     *  pondering. */
+    void newGame() {
+        _stats = null;
+        _nodes = 0;
+        if (_table != null) {
+            _table.clear();
+        }
+        if (_searchers != null) {
+            for (Searcher searcher : _searchers) {
+                searcher.clear();
+            }
+        }
+        if (_solver != null) {
+            _solver.clear();
+        }
+    }
+
+    /** Allocate my transposition table, my Searchers, and threads to run
+     *  all but the first of them (or all of them, when pondering). */
+    private void startSearchers() {
+        if (_table == null) {
+            _table = new TranspositionTable(_tableBytes);
+        }
+        _searchers = new Searcher[_threads];
+        for (int i = 0; i < _threads; i += 1) {
+            _searchers[i] = new Searcher(_evaluator, _table, _stop, _deadline);
+        }
+        _pool = Executors.newFixedThreadPool(_threads, r -> {
+            Thread thread = new Thread(r, "loa-search");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
-    /** Used to convey moves discovered by findMove. */
-    private Move _foundMove;
+    /** Size of my transposition table, in bytes. */
+    private long _tableBytes;
+    /** Results of previous searches, or null if not yet allocated.
+     *  Shared by all my Searchers. */
+    private TranspositionTable _table;
+    /** Limit on the depth of my searches. */
+    private int _maxDepth;
+    /** Static evaluation function used by my searches. */
+    private Evaluator _evaluator;
+    /** Number of threads to search with. */
+    private int _threads;
+    /** One Searcher for each thread, or null if not yet created. */
+    private Searcher[] _searchers;
+    /** Threads that run all but the first of _searchers, and all of them
+     *  when pondering, or null. */
+    private ExecutorService _pool;
+    /** Set to tell helper threads to abandon their searches. */
+    private final AtomicBoolean _stop = new AtomicBoolean();
+    /** Time (as for System.currentTimeMillis) by which my searches must
+     *  finish.  Pondering starts with no deadline, which is set if the
+     *  opponent makes the predicted move. */
+    private final AtomicLong _deadline = new AtomicLong();
+    /** True iff I think while a manual opponent chooses their move. */
+    private boolean _ponder;
+    /** The search of _ponderBoard running while my opponent chooses their
+     *  move, or null if none. */
+    private Future<Move> _pondering;
+    /** The searches by my helper Searchers accompanying _pondering. */
+    private List<Future<?>> _ponderHelpers;
+    /** The position I expect after my opponent's reply. */
+    private Board _ponderBoard;
+    /** Time at which _pondering started. */
+    private long _ponderStart;
+    /** Numbers of correct and incorrect predictions of my opponent's
+     *  replies. */
+    private int _ponderHits, _ponderMisses;
+    /** Number of positions visited by my last search. */
+    private long _nodes;
+    /** Summary of my last search, or null. */
+    private SearchStats _stats;
+    /** Limit on the positions visited by the solver per move (0 to
+     *  disable it). */
+    private long _solverNodes;
+    /** The proof-number solver, or null if not yet needed. */
+    private Solver _solver;
+    /** Book of opening moves, or null. */
+    private OpeningBook _book;
+    /** Where to log summaries of searches as JSON, or null. */
+    private PrintStream _searchLog;
+    /** Number of positions visited and milliseconds taken by all my
+     *  searches. */
+    private long _totalNodes, _totalTime;
 
 }
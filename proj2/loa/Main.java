@@ -3,6 +3,7 @@
 package loa;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
@@ -36,7 +37,16 @@ public class Main {
     public static void main(String... args) {
         CommandArgs options =
             new CommandArgs("--debug=(\\d+){0,1} --display{0,1} --strict{0,1} "
-                            + "--log={0,1} --=(.*){0,2}",
+                            + "--log={0,1} --hash=(\\d+){0,1} "
+                            + "--threads=([1-9]\\d*){0,1} --ponder{0,1} "
+                            + "--stats{0,1} "
+                            + "--searchlog=(.+){0,1} --book=(.+){0,1} "
+                            + "--engine=(alphabeta|mcts){0,1} "
+                            + "--analyze=(.+){0,1} --depth=([1-9]\\d*){0,1} "
+                            + "--time=(\\d+\\.?\\d*){0,1} "
+                            + "--parallel=([1-9]\\d*){0,1} --weights=(.+){0,1} "
+                            + "--record=(.+){0,1} --clock=(.+){0,1} "
+                            + "--=(.*){0,2}",
                             args);
 
         if (!options.ok()) {
@@ -49,6 +59,11 @@ public class Main {
             setMessageLevel(options.getInt("--debug"));
         }
 
+        if (options.contains("--analyze")) {
+            analyze(options);
+            return;
+        }
+
         List<String> files = options.get("--");
         if (!files.isEmpty()) {
             try {
@@ -82,6 +97,59 @@ public class Main {
         game.play();
     }
 
+    /** Analyze the positions in the file named by the --analyze option
+     *  in OPTIONS, writing CSV to the standard output. */
+    private static void analyze(CommandArgs options) {
+        MachinePlayer template = new MachinePlayer();
+        setWeights(template, options);
+        if (options.contains("--hash")) {
+            template.setTableSize((long) options.getInt("--hash") << 20);
+        }
+        if (options.contains("--threads")) {
+            template.setThreads(options.getInt("--threads"));
+        }
+        long limit = 0;
+        if (options.contains("--depth")) {
+            if (options.getInt("--depth") > MachinePlayer.MAX_DEPTH) {
+                error(1, "Depth limit too large");
+            }
+            template.setMaxDepth(options.getInt("--depth"));
+        }
+        if (options.contains("--time")) {
+            limit = Game.millis(options.getDouble("--time"));
+            if (limit < 0) {
+                error(1, "Time limit too large");
+            }
+        } else if (!options.contains("--depth")) {
+            limit = Game.DEFAULT_MOVE_TIME;
+        }
+        int parallel = options.contains("--parallel")
+            ? options.getInt("--parallel")
+            : Runtime.getRuntime().availableProcessors();
+        try (BufferedReader input = new BufferedReader(
+                 new InputStreamReader(
+                     new FileInputStream(options.getFirst("--analyze"))))) {
+            new Analyzer(template, limit, parallel).analyze(input,
+                                                            System.out);
+        } catch (IOException excp) {
+            error(1, "Could not read positions: %s", excp.getMessage());
+        }
+    }
+
+    /** Have PLAYER use the evaluation weights in the file named by the
+     *  --weights option in OPTIONS, if there is one. */
+    private static void setWeights(MachinePlayer player,
+                                   CommandArgs options) {
+        if (options.contains("--weights")) {
+            try {
+                player.setEvaluator(Evaluator.read(
+                    new File(options.getFirst("--weights"))));
+            } catch (IOException excp) {
+                error(1, "Could not read weights: %s", excp.getMessage());
+            }
+        }
+    }
+
     /** Return an appropriate Controller as indicated by OPTIONS. */
     private static Game getGame(CommandArgs options) {
         Player manualPlayer;
@@ -98,7 +166,7 @@ public class Main {
             manualPlayer = new GUIPlayer(gui);
         } else {
             gui = null;
-            reporter = new TextReporter();
+            reporter = new TextReporter(options.contains("--stats"));
             view = new NullView();
             manualPlayer = new HumanPlayer();
         }
@@ -112,8 +180,65 @@ public class Main {
             }
         }
 
-        return new Game(view, log, reporter, manualPlayer,
-                        new MachinePlayer(), options.contains("--strict"));
+        MachinePlayer autoPlayer = new MachinePlayer();
+        setWeights(autoPlayer, options);
+        if (options.contains("--hash")) {
+            autoPlayer.setTableSize((long) options.getInt("--hash") << 20);
+        }
+        if (options.contains("--threads")) {
+            autoPlayer.setThreads(options.getInt("--threads"));
+        }
+        autoPlayer.setPondering(options.contains("--ponder"));
+        if (options.contains("--searchlog")) {
+            try {
+                FileOutputStream out =
+                    new FileOutputStream(options.getFirst("--searchlog"),
+                                         true);
+                autoPlayer.setSearchLog(new PrintStream(out, true));
+            } catch (IOException excp) {
+                error(1, "Could not open search log");
+            }
+        }
+        if (options.contains("--book")) {
+            try {
+                autoPlayer.setBook(new OpeningBook(
+                    new File(options.getFirst("--book"))));
+            } catch (IOException excp) {
+                error(1, "Could not open opening book: %s",
+                      excp.getMessage());
+            }
+        }
+
+        MCTSPlayer mctsPlayer = new MCTSPlayer();
+        if (options.contains("--threads")) {
+            mctsPlayer.setThreads(options.getInt("--threads"));
+        }
+
+        Player defaultPlayer =
+            options.contains("--engine")
+            && options.getFirst("--engine").equals("mcts")
+            ? mctsPlayer : autoPlayer;
+        Game game = new Game(view, log, reporter, manualPlayer,
+                             defaultPlayer, options.contains("--strict"));
+        game.setEngine("alphabeta", autoPlayer);
+        game.setEngine("mcts", mctsPlayer);
+        if (options.contains("--clock")) {
+            try {
+                game.setClock(Clock.parse(options.getFirst("--clock")));
+            } catch (IllegalArgumentException excp) {
+                error(1, "%s", excp.getMessage());
+            }
+        }
+        if (options.contains("--record")) {
+            try {
+                game.setRecorder(GameRecord.append(
+                    new File(options.getFirst("--record"))));
+            } catch (IOException excp) {
+                error(1, "Could not open record file: %s",
+                      excp.getMessage());
+            }
+        }
+        return game;
     }
 
     /** Print brief description of the command-line format. */
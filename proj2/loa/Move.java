@@ -51,6 +51,16 @@ final class Move {
         return mv(from, to, false);
     }
 
+    /** Return the move whose index() is INDEX, or null if there is
+     *  none. */
+    static Move mv(int index) {
+        int from = index >>> 7, to = (index >>> 1) & (NUM_SQUARES - 1);
+        if (from >= NUM_SQUARES) {
+            return null;
+        }
+        return _moves[from][to][index & 1];
+    }
+
     /** Return the Square moved from. */
     Square getFrom() {
         return _from;
@@ -71,6 +81,20 @@ final class Move {
         return _captureMove;
     }
 
+    /** Return a compact encoding of this move: the index of the from
+     *  square in bits 7-12, the index of the to square in bits 1-6, and
+     *  1 in bit 0 iff this is a capture.  Every move has a distinct,
+     *  positive index less than MAX_INDEX. */
+    int index() {
+        return index(_from.index(), _to.index(), _capture);
+    }
+
+    /** Return the index() of the move from the square whose index is FROM
+     *  to the square whose index is TO, capturing iff CAPTURE. */
+    static int index(int from, int to, boolean capture) {
+        return (from << 7) | (to << 1) | (capture ? 1 : 0);
+    }
+
     /** Return the length of this move (number of squares moved). */
     int length() {
         return _from.distance(_to);
@@ -89,6 +113,9 @@ final class Move {
         _captureMove = _capture ? this : new Move(from, to, true);
     }
 
+    /** Upper bound on the index() of any move. */
+    static final int MAX_INDEX = NUM_SQUARES * NUM_SQUARES * 2;
+
     /** Starting and destination Squares. */
     private final Square _from, _to;
     /** True iff this Move records a capture. */
@@ -0,0 +1,25 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+/** A Reporter that reports nothing, for games played without a user.
+ *  @author Tasman Kuang
+ */
+class NullReporter implements Reporter {
+
+    @Override
+    public void reportError(String fmt, Object... args) {
+    }
+
+    @Override
+    public void reportNote(String fmt, Object... args) {
+    }
+
+    @Override
+    public void reportMove(Move move) {
+    }
+
+    @Override
+    public void reportSearch(SearchStats stats) {
+    }
+}
@@ -0,0 +1,244 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** A read-only table of book moves for positions early in the game,
+ *  indexed by Board.key().  A book is a file consisting of a header
+ *  (HEADER_BYTES bytes: MAGIC, VERSION, and the number of records)
+ *  followed by records of RECORD_BYTES bytes each: a position's key, the
+ *  index() of the move to play, and the value found for the position,
+ *  in order of increasing key.  The file is memory-mapped, so that
+ *  opening a book takes constant time, lookups (by binary search) read
+ *  only the pages they touch, and processes using the same book share
+ *  one copy of it.
+ *
+ *  The main program builds a book.  Usage:
+ *      java loa.OpeningBook FILE [ PLIES [ DEPTH ] ]
+ *  searches every position reachable in fewer than PLIES moves (default
+ *  DEFAULT_PLIES) from the initial position to depth DEPTH (default
+ *  DEFAULT_DEPTH), using one thread per processor, and writes the
+ *  results to FILE.
+ *  @author Tasman Kuang
+ */
+class OpeningBook {
+
+    /** Identifies a book file. */
+    static final int MAGIC = 0x4c4f4142;
+
+    /** Version of the book format. */
+    static final int VERSION = 1;
+
+    /** Sizes of the header and of one record, in bytes. */
+    static final int HEADER_BYTES = 16, RECORD_BYTES = 16;
+
+    /** Default number of plies covered by a new book. */
+    static final int DEFAULT_PLIES = 2;
+
+    /** Default depth of searches for a new book. */
+    static final int DEFAULT_DEPTH = 7;
+
+    /** The book in FILE.  Throws IOException if FILE cannot be read or
+     *  is not a book. */
+    OpeningBook(File file) throws IOException {
+        try (FileChannel channel =
+             FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            _records = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                   channel.size());
+        }
+        if (_records.capacity() < HEADER_BYTES
+            || _records.getInt(0) != MAGIC
+            || _records.getInt(4) != VERSION) {
+            throw new IOException("not an opening book: " + file);
+        }
+        long size = _records.getLong(8);
+        if (size < 0
+            || HEADER_BYTES + size * RECORD_BYTES != _records.capacity()) {
+            throw new IOException("damaged opening book: " + file);
+        }
+        _size = (int) size;
+    }
+
+    /** Return the number of positions in this book. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the book move for BOARD, or null if there is none. */
+    Move lookup(Board board) {
+        int k = find(board.key());
+        if (k < 0) {
+            return null;
+        }
+        Move move = Move.mv(_records.getInt(offset(k) + 8));
+        if (move == null || !board.isLegal(move)) {
+            return null;
+        }
+        return move;
+    }
+
+    /** Return the value recorded for BOARD (positive favors white), or 0
+     *  if BOARD is not in this book. */
+    int value(Board board) {
+        int k = find(board.key());
+        return k < 0 ? 0 : _records.getInt(offset(k) + 12);
+    }
+
+    /** Return the number of the record whose key is KEY, or -1 if there
+     *  is none. */
+    private int find(long key) {
+        int lo = 0, hi = _size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long k = _records.getLong(offset(mid));
+            if (k < key) {
+                lo = mid + 1;
+            } else if (k > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the offset of record number K in the file. */
+    private static int offset(int k) {
+        return HEADER_BYTES + k * RECORD_BYTES;
+    }
+
+    /** Build a book as described by ARGS. */
+    public static void main(String... args) {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: java loa.OpeningBook FILE "
+                               + "[ PLIES [ DEPTH ] ]");
+            System.exit(1);
+        }
+        int plies = args.length > 1 ? Integer.parseInt(args[1])
+            : DEFAULT_PLIES;
+        int depth = args.length > 2 ? Integer.parseInt(args[2])
+            : DEFAULT_DEPTH;
+        List<Board> positions = positions(plies);
+        System.err.printf("Searching %d positions to depth %d...%n",
+                          positions.size(), depth);
+        long[] records = search(positions, depth,
+                                Runtime.getRuntime().availableProcessors());
+        try {
+            write(new File(args[0]), records);
+        } catch (IOException excp) {
+            System.err.printf("Error: could not write %s: %s%n", args[0],
+                              excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return the distinct positions, not ending the game, reached by
+     *  fewer than PLIES moves from the initial position. */
+    static List<Board> positions(int plies) {
+        List<Board> result = new ArrayList<>();
+        HashSet<Long> seen = new HashSet<>();
+        List<Board> level = new ArrayList<>();
+        level.add(new Board());
+        seen.add(level.get(0).key());
+        for (int ply = 0; ply < plies; ply += 1) {
+            result.addAll(level);
+            List<Board> next = new ArrayList<>();
+            if (ply + 1 < plies) {
+                for (Board board : level) {
+                    for (Move move : board.legalMoves()) {
+                        Board child = new Board(board);
+                        child.makeMove(move);
+                        if (!child.gameOver() && seen.add(child.key())) {
+                            next.add(child);
+                        }
+                    }
+                }
+            }
+            level = next;
+        }
+        return result;
+    }
+
+    /** Search each of POSITIONS to DEPTH using THREADS threads, and return
+     *  the resulting records, three longs (key, move index, value) for
+     *  each position with a legal move, sorted by key. */
+    static long[] search(List<Board> positions, int depth, int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ThreadLocal<MachinePlayer> players = ThreadLocal.withInitial(() -> {
+            MachinePlayer player = new MachinePlayer();
+            player.setMaxDepth(depth);
+            return player;
+        });
+        List<Future<long[]>> results = new ArrayList<>();
+        for (Board board : positions) {
+            results.add(pool.submit(() -> {
+                MachinePlayer player = players.get();
+                Move move = player.searchForMove(board, 0);
+                if (move == null) {
+                    return null;
+                }
+                return new long[] {
+                    board.key(), move.index(),
+                    player.searchStats().value()
+                };
+            }));
+        }
+        List<long[]> records = new ArrayList<>();
+        try {
+            for (Future<long[]> result : results) {
+                long[] record = result.get();
+                if (record != null) {
+                    records.add(record);
+                }
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new Error("book search failed", excp);
+        } finally {
+            pool.shutdownNow();
+        }
+        records.sort((r0, r1) -> Long.compare(r0[0], r1[0]));
+        long[] flat = new long[3 * records.size()];
+        for (int i = 0; i < records.size(); i += 1) {
+            System.arraycopy(records.get(i), 0, flat, 3 * i, 3);
+        }
+        return flat;
+    }
+
+    /** Write a book containing RECORDS (as returned by search) to
+     *  FILE. */
+    static void write(File file, long[] records) throws IOException {
+        try (DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream(
+                 new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(records.length / 3);
+            for (int i = 0; i < records.length; i += 3) {
+                out.writeLong(records[i]);
+                out.writeInt((int) records[i + 1]);
+                out.writeInt((int) records[i + 2]);
+            }
+        }
+    }
+
+    /** The mapped contents of the book file. */
+    private final MappedByteBuffer _records;
+    /** Number of records. */
+    private final int _size;
+
+}
@@ -0,0 +1,42 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the OpeningBook class.
+ *  @author Tasman Kuang
+ */
+public class OpeningBookTest {
+
+    /** Test building, mapping, and consulting an opening book. */
+    @Test
+    public void testOpeningBook() throws IOException {
+        List<Board> positions = OpeningBook.positions(2);
+        assertEquals("positions", 1 + new Board().legalMoves().size(),
+                     positions.size());
+        long[] records = OpeningBook.search(positions, 1, 1);
+        File file = File.createTempFile("book", ".bin");
+        try {
+            OpeningBook.write(file, records);
+            OpeningBook book = new OpeningBook(file);
+            assertEquals("size", positions.size(), book.size());
+            for (Board b : positions) {
+                Move move = book.lookup(b);
+                assertNotNull("book move", move);
+                assertTrue("legal book move", b.isLegal(move));
+            }
+            Board b = new Board(positions.get(1));
+            b.makeMove(b.legalMoves().get(0));
+            assertNull("position not in book", book.lookup(b));
+        } finally {
+            file.delete();
+        }
+    }
+
+}
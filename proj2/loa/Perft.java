@@ -0,0 +1,57 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+/** Counts the move sequences of each length from the initial position
+ *  ("perft"), as a check on and benchmark of move generation.  Usage:
+ *      java loa.Perft [ DEPTH ]
+ *  prints, for each depth from 1 to DEPTH (default DEFAULT_DEPTH), the
+ *  number of positions reached and the rate at which they were reached.
+ *  Positions in which the game is over are counted but not expanded.
+ *  @author Tasman Kuang
+ */
+class Perft {
+
+    /** Default greatest depth. */
+    static final int DEFAULT_DEPTH = 5;
+
+    /** Count positions up to the depth in ARGS[0], or DEFAULT_DEPTH if
+     *  absent. */
+    public static void main(String... args) {
+        int maxDepth =
+            args.length == 0 ? DEFAULT_DEPTH : Integer.parseInt(args[0]);
+        Board board = new Board();
+        int[][] buffers = new int[maxDepth][Board.MAX_MOVES];
+        for (int depth = 1; depth <= maxDepth; depth += 1) {
+            long start = System.nanoTime();
+            long nodes = perft(board, depth, buffers);
+            double secs = (System.nanoTime() - start) * 1e-9;
+            System.out.printf("depth %d: %d positions in %.2f sec. "
+                              + "(%.0f/sec.)%n",
+                              depth, nodes, secs, nodes / secs);
+        }
+    }
+
+    /** Return the number of positions reached by sequences of DEPTH moves
+     *  from BOARD, not continuing past the end of the game, using
+     *  BUFFERS[0 .. DEPTH-1] (each of length Board.MAX_MOVES) to hold
+     *  moves.  BOARD is restored before returning. */
+    static long perft(Board board, int depth, int[][] buffers) {
+        if (depth == 0 || board.gameOver()) {
+            return 1;
+        }
+        int[] moves = buffers[depth - 1];
+        int n = board.legalMoves(moves);
+        if (depth == 1) {
+            return n;
+        }
+        long total = 0;
+        for (int i = 0; i < n; i += 1) {
+            board.makeMove(moves[i]);
+            total += perft(board, depth - 1, buffers);
+            board.retract();
+        }
+        return total;
+    }
+
+}
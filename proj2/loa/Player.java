@@ -34,9 +34,39 @@ public abstract class Player {
         return _game;
     }
 
+    /** Return the time left on my clock, in milliseconds, or -1 if the
+     *  game is not timed by a clock. */
+    long timeLeft() {
+        Clock clock = _game.clock();
+        return clock == null ? -1 : clock.remaining(_side);
+    }
+
+    /** Return the time I should take to choose my next move, in
+     *  milliseconds (0 for no limit): the game's fixed time per move if
+     *  it is not timed by a clock, and otherwise my clock's allocation for
+     *  the moves I have left to make. */
+    long moveTime() {
+        Clock clock = _game.clock();
+        if (clock == null) {
+            return _game.moveTime();
+        }
+        return clock.allocate(_side, (getBoard().movesLeft() + 1) / 2);
+    }
+
+    /** Stop any thinking I am doing in the background.  Called when the
+     *  game ends or I am replaced.  By default, does nothing. */
+    void stop() {
+    }
+
     /** Return true iff I am a manual (human or non-automated) player. */
     abstract boolean isManual();
 
+    /** Return a short description of my kind and settings, as recorded
+     *  with the games I play.  By default, "manual" or "auto". */
+    String description() {
+        return isManual() ? "manual" : "auto";
+    }
+
     /** A factory method that returns a Player with my concrete type that
      *  plays the side indicated by PIECE in a game controlled by
      *  GAME.  This typically will call the constructor for the class
@@ -18,5 +18,9 @@ interface Reporter {
     /** Display MOVE as needed. */
     void reportMove(Move move);
 
+    /** Display STATS, summarizing an automated player's search, as
+     *  needed. */
+    void reportSearch(SearchStats stats);
+
 }
 
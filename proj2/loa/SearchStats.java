@@ -0,0 +1,214 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.util.List;
+import java.util.Locale;
+
+/** A summary of one move's search by a MachinePlayer, combining the
+ *  counts of all of its search threads.
+ *  @author Tasman Kuang
+ */
+class SearchStats {
+
+    /** A summary of a search by SIDE that chose MOVE, with MAIN the
+     *  Searcher whose result was used and SEARCHERS all the Searchers
+     *  that took part, taking MILLIS milliseconds. */
+    SearchStats(Piece side, Move move, Searcher main, Searcher[] searchers,
+                long millis) {
+        _side = side;
+        _move = move;
+        _depth = main.depthReached();
+        _value = main.bestValue();
+        _branchingFactor = main.branchingFactor();
+        _principalVariation = main.principalVariation();
+        _threads = searchers.length;
+        _millis = millis;
+        _solverResult = -1;
+        for (Searcher searcher : searchers) {
+            _nodes += searcher.nodes();
+            _tableProbes += searcher.tableProbes();
+            _tableHits += searcher.tableHits();
+            _cutoffs += searcher.cutoffs();
+            _firstMoveCutoffs += searcher.firstMoveCutoffs();
+            _evalNanos += searcher.evalNanos();
+            _genNanos += searcher.genNanos();
+        }
+    }
+
+    /** A summary of a search by SIDE in which the proof-number solver
+     *  found the winning MOVE, taking MILLIS milliseconds in all. */
+    SearchStats(Piece side, Move move, long millis) {
+        _side = side;
+        _move = move;
+        _depth = 0;
+        _value = side == Piece.WP ? Searcher.WINNING_VALUE
+            : -Searcher.WINNING_VALUE;
+        _branchingFactor = 0.0;
+        _principalVariation = List.of(move);
+        _threads = 1;
+        _millis = millis;
+        _solverResult = -1;
+    }
+
+    /** Record that the proof-number solver was tried before the search,
+     *  with RESULT (as for Solver.solve), visiting NODES positions, which
+     *  are included in nodes(). */
+    void setSolverResult(int result, long nodes) {
+        _solverResult = result;
+        _solverNodes = nodes;
+        _nodes += nodes;
+    }
+
+    /** Return the result of the proof-number solver (as for
+     *  Solver.solve), or -1 if it was not tried. */
+    int solverResult() {
+        return _solverResult;
+    }
+
+    /** Return the side that searched. */
+    Piece side() {
+        return _side;
+    }
+
+    /** Return the move chosen. */
+    Move move() {
+        return _move;
+    }
+
+    /** Return the depth of the last completed iteration. */
+    int depth() {
+        return _depth;
+    }
+
+    /** Return the value found by the last completed iteration (positive
+     *  favors white). */
+    int value() {
+        return _value;
+    }
+
+    /** Return the total number of positions visited, including those
+     *  visited by the proof-number solver. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the time taken, in milliseconds. */
+    long millis() {
+        return _millis;
+    }
+
+    /** Return the number of positions visited per second. */
+    double nodesPerSecond() {
+        return _millis == 0 ? 0.0 : 1000.0 * _nodes / _millis;
+    }
+
+    /** Return the percentage of transposition-table lookups that
+     *  succeeded. */
+    double tableHitRate() {
+        return percent(_tableHits, _tableProbes);
+    }
+
+    /** Return the percentage of beta cutoffs caused by the first move
+     *  searched. */
+    double firstMoveCutoffRate() {
+        return percent(_firstMoveCutoffs, _cutoffs);
+    }
+
+    /** Return the expected line of play. */
+    List<Move> principalVariation() {
+        return _principalVariation;
+    }
+
+    /** Return the fraction of the threads' total search time spent in
+     *  static evaluation and in move generation, as percentages, in that
+     *  order. */
+    double[] timeShares() {
+        double total = 1e6 * _millis * _threads;
+        return new double[] {
+            total == 0 ? 0.0 : 100.0 * _evalNanos / total,
+            total == 0 ? 0.0 : 100.0 * _genNanos / total
+        };
+    }
+
+    @Override
+    public String toString() {
+        double[] shares = timeShares();
+        StringBuilder line = new StringBuilder();
+        for (Move move : _principalVariation) {
+            line.append(' ').append(move);
+        }
+        String solver = _solverResult < 0 ? ""
+            : String.format(", solver %s (%d nodes)",
+                            Solver.RESULT_NAMES[_solverResult],
+                            _solverNodes);
+        return String.format(Locale.ROOT,
+                             "%s: %s, depth %d, value %d, %d nodes in %d ms "
+                             + "(%.0f nodes/sec.), EBF %.2f, "
+                             + "TT hits %d/%d (%.1f%%), "
+                             + "first-move cutoffs %.1f%%, "
+                             + "eval %.1f%%, movegen %.1f%%%s%n"
+                             + "  expected line:%s",
+                             _side.fullName(), _move, _depth, _value, _nodes,
+                             _millis, nodesPerSecond(), _branchingFactor,
+                             _tableHits, _tableProbes, tableHitRate(),
+                             firstMoveCutoffRate(), shares[0], shares[1],
+                             solver, line);
+    }
+
+    /** Return this summary as a one-line JSON object. */
+    String toJSON() {
+        StringBuilder pv = new StringBuilder();
+        for (Move move : _principalVariation) {
+            pv.append(pv.length() == 0 ? "\"" : ",\"").append(move)
+                .append('"');
+        }
+        return String.format(Locale.ROOT,
+                             "{\"side\":\"%s\",\"move\":\"%s\","
+                             + "\"depth\":%d,\"value\":%d,\"nodes\":%d,"
+                             + "\"millis\":%d,\"nps\":%.0f,\"ebf\":%.3f,"
+                             + "\"threads\":%d,"
+                             + "\"ttProbes\":%d,\"ttHits\":%d,"
+                             + "\"cutoffs\":%d,\"firstMoveCutoffs\":%d,"
+                             + "\"evalNanos\":%d,\"genNanos\":%d,"
+                             + "\"solver\":%s,\"solverNodes\":%d,"
+                             + "\"pv\":[%s]}",
+                             _side.fullName(), _move, _depth,
+                             _value, _nodes, _millis, nodesPerSecond(),
+                             _branchingFactor, _threads, _tableProbes,
+                             _tableHits, _cutoffs, _firstMoveCutoffs,
+                             _evalNanos, _genNanos,
+                             _solverResult < 0 ? "null"
+                             : "\"" + Solver.RESULT_NAMES[_solverResult]
+                             + "\"",
+                             _solverNodes, pv);
+    }
+
+    /** Return 100 * PART / WHOLE, or 0 if WHOLE is 0. */
+    private static double percent(long part, long whole) {
+        return whole == 0 ? 0.0 : 100.0 * part / whole;
+    }
+
+    /** The side that searched. */
+    private final Piece _side;
+    /** The move chosen. */
+    private final Move _move;
+    /** Depth and value of the last completed iteration. */
+    private final int _depth, _value;
+    /** Effective branching factor of the last completed iteration. */
+    private final double _branchingFactor;
+    /** The expected line of play. */
+    private final List<Move> _principalVariation;
+    /** Number of search threads. */
+    private final int _threads;
+    /** Time taken, in milliseconds. */
+    private final long _millis;
+    /** Totals over all search threads. */
+    private long _nodes, _tableProbes, _tableHits, _cutoffs,
+        _firstMoveCutoffs, _evalNanos, _genNanos;
+    /** Result of the proof-number solver, or -1 if it was not tried. */
+    private int _solverResult;
+    /** Number of positions visited by the proof-number solver. */
+    private long _solverNodes;
+
+}
@@ -0,0 +1,86 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Measures the speedup of MachinePlayer's multi-threaded search.  Usage:
+ *      java loa.SearchTiming [ THREADS [ DEPTH [ POSITIONS ] ] ]
+ *  searches POSITIONS positions taken from random games to depth DEPTH,
+ *  first with one thread and then with THREADS threads (by default, one
+ *  per processor), and reports the time taken by each and the ratio
+ *  between them.  An untimed search of the positions precedes both, to
+ *  give the JIT compiler a chance to do its work.
+ *  @author Tasman Kuang
+ */
+class SearchTiming {
+
+    /** Default search depth. */
+    static final int DEFAULT_DEPTH = 5;
+
+    /** Default number of positions to search. */
+    static final int DEFAULT_POSITIONS = 20;
+
+    /** Number of random moves leading to each position. */
+    static final int OPENING_MOVES = 8;
+
+    /** Run the timings described by ARGS. */
+    public static void main(String... args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0])
+            : Runtime.getRuntime().availableProcessors();
+        int depth = args.length > 1 ? Integer.parseInt(args[1])
+            : DEFAULT_DEPTH;
+        int numPositions = args.length > 2 ? Integer.parseInt(args[2])
+            : DEFAULT_POSITIONS;
+        List<Board> positions = positions(numPositions);
+
+        MachinePlayer warmUp = new MachinePlayer();
+        warmUp.setMaxDepth(depth);
+        for (Board board : positions) {
+            warmUp.searchForMove(board, 0);
+        }
+        double serial = time(positions, 1, depth);
+        double parallel = time(positions, threads, depth);
+        System.out.printf("Speedup with %d threads at depth %d: %.2f%n",
+                          threads, depth, serial / parallel);
+    }
+
+    /** Search each of POSITIONS to DEPTH using THREADS threads.  Print
+     *  and return the time taken in seconds. */
+    static double time(List<Board> positions, int threads, int depth) {
+        MachinePlayer player = new MachinePlayer();
+        player.setThreads(threads);
+        player.setMaxDepth(depth);
+        long nodes = 0;
+        long start = System.nanoTime();
+        for (Board board : positions) {
+            player.searchForMove(board, 0);
+            nodes += player.nodes();
+        }
+        double secs = (System.nanoTime() - start) * 1e-9;
+        player.shutdown();
+        System.out.printf("%d thread(s): %.2f sec., %d nodes "
+                          + "(%.0f nodes/sec.)%n",
+                          threads, secs, nodes, nodes / secs);
+        return secs;
+    }
+
+    /** Return NUMPOSITIONS positions, each reached by OPENING_MOVES random
+     *  moves from the initial position. */
+    static List<Board> positions(int numPositions) {
+        List<Board> positions = new ArrayList<>();
+        for (List<Move> game : BoardTiming.randomGames(numPositions)) {
+            if (game.size() <= OPENING_MOVES) {
+                continue;
+            }
+            Board board = new Board();
+            for (Move move : game.subList(0, OPENING_MOVES)) {
+                board.makeMove(move);
+            }
+            positions.add(board);
+        }
+        return positions;
+    }
+
+}
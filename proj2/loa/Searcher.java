@@ -0,0 +1,597 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static loa.Piece.*;
+import static loa.TranspositionTable.*;
+
+/** One thread's share of a MachinePlayer's search: an alpha-beta search
+ *  by iterative deepening on a private copy of the board.  Its
+ *  transposition table may be shared with other Searchers running at
+ *  the same time, each of which then profits from the positions the
+ *  others have already searched ("lazy SMP").
+ *  @author Tasman Kuang
+ */
+class Searcher {
+
+    /** A position-score magnitude indicating a win (for white if positive,
+     *  black if negative). */
+    static final int WINNING_VALUE = Integer.MAX_VALUE - 20;
+    /** A magnitude greater than a normal value. */
+    static final int INFTY = Integer.MAX_VALUE;
+
+    /** Limit on search depth. */
+    static final int MAX_DEPTH = 16;
+
+    /** Ordering scores for moves from the transposition table, killer
+     *  moves, and captures.  History scores are kept below
+     *  CAPTURE_SCORE. */
+    private static final int
+        HASH_MOVE_SCORE = Integer.MAX_VALUE,
+        KILLER_SCORE = 1 << 29,
+        CAPTURE_SCORE = 1 << 28;
+
+    /** Half-width of the initial aspiration window, and the half-width
+     *  beyond which a failing search is repeated with no limit on that
+     *  side. */
+    private static final int
+        ASPIRATION_WINDOW = 24,
+        MAX_ASPIRATION_WINDOW = 1 << 10;
+
+    /** Timing every call to the evaluation and move generator would cost
+     *  more than the calls themselves, so only one call in
+     *  SAMPLE_MASK + 1 is timed. */
+    private static final int SAMPLE_MASK = (1 << 6) - 1;
+
+    /** Number of nodes searched between checks of the clock. */
+    private static final int CLOCK_INTERVAL = 1 << 10;
+
+    /** A Searcher that evaluates positions with EVALUATOR, records its
+     *  results in TABLE, abandons its search when STOP becomes true, and
+     *  must finish by the time (as for System.currentTimeMillis) in
+     *  DEADLINE.  DEADLINE may change during a search. */
+    Searcher(Evaluator evaluator, TranspositionTable table,
+             AtomicBoolean stop, AtomicLong deadline) {
+        _evaluator = evaluator;
+        _table = table;
+        _stop = stop;
+        _deadline = deadline;
+    }
+
+    /** Search a copy of BOARD by iterative deepening from depth FIRSTDEPTH
+     *  to MAXDEPTH, stopping early if the time reaches the deadline, if
+     *  the stop flag is set, if a win is proven, or if an iteration ends
+     *  past the midpoint of the time available (so that the next is
+     *  unlikely to finish).  Returns the best move found by the last
+     *  completed iteration, or null (leaving bestValue() the static value
+     *  of BOARD) if the side to move has no legal moves.  Assumes the
+     *  game is not over on BOARD. */
+    Move search(Board board, int firstDepth, int maxDepth) {
+        _board.copyFrom(board);
+        _nodes = _tableProbes = _tableHits = 0;
+        _cutoffs = _firstMoveCutoffs = 0;
+        _evalCalls = _genCalls = _evalNanos = _genNanos = 0;
+        _rootPly = _board.movesMade();
+        _rootMoves = _board.legalMoves();
+        _rootValues = new HashMap<>();
+        _bestMove = _rootMoves.isEmpty() ? null : _rootMoves.get(0);
+        _value = 0;
+        _depth = 0;
+        _branchingFactor = 0;
+        _principalVariation = new ArrayList<>();
+        if (_bestMove == null) {
+            _value = estimate(_board);
+            return null;
+        }
+        for (int[] killers : _killers) {
+            Arrays.fill(killers, 0);
+        }
+        for (int i = 0; i < _history.length; i += 1) {
+            _history[i] >>>= 2;
+        }
+        long prevNodes = 0;
+
+        long start = System.currentTimeMillis();
+        int sense = _board.turn() == WP ? 1 : -1;
+        for (int depth = firstDepth; depth <= maxDepth; depth += 1) {
+            int value;
+            long startNodes = _nodes;
+            try {
+                value = aspirationSearch(depth, sense);
+            } catch (SearchTimeout excp) {
+                break;
+            }
+            if (_foundMove != null) {
+                _bestMove = _foundMove;
+            }
+            _value = value;
+            _depth = depth;
+            _principalVariation.clear();
+            for (int i = 0; i < _pvLength[0]; i += 1) {
+                _principalVariation.add(Move.mv(_pv[0][i]));
+            }
+            long nodes = _nodes - startNodes;
+            _branchingFactor =
+                prevNodes == 0 ? Math.pow(nodes, 1.0 / depth)
+                : (double) nodes / prevNodes;
+            prevNodes = nodes;
+            orderRootMoves(sense);
+            long now = System.currentTimeMillis(),
+                deadline = _deadline.get();
+            if (Math.abs(value) >= WINNING_VALUE
+                || (deadline != Long.MAX_VALUE
+                    && now - start > deadline - now)) {
+                break;
+            }
+        }
+        return _bestMove;
+    }
+
+    /** Search _board to DEPTH for the side whose SENSE is given, and
+     *  return its value, leaving the move found in _foundMove.  After the
+     *  first iteration, the search starts with a narrow window around the
+     *  previous iteration's value, which is widened on the side where it
+     *  fails until the value falls inside it. */
+    private int aspirationSearch(int depth, int sense) {
+        int window = ASPIRATION_WINDOW;
+        int alpha = -INFTY, beta = INFTY;
+        if (_depth > 0 && Math.abs(_value) < WINNING_VALUE) {
+            alpha = _value - window;
+            beta = _value + window;
+        }
+        while (true) {
+            _foundMove = null;
+            int value = findMove(_board, depth, true, sense, alpha, beta);
+            boolean wide =
+                window >= MAX_ASPIRATION_WINDOW
+                || Math.abs(value) >= WINNING_VALUE;
+            window *= 4;
+            if (value <= alpha && alpha != -INFTY) {
+                alpha = wide ? -INFTY : value - window;
+            } else if (value >= beta && beta != INFTY) {
+                beta = wide ? INFTY : value + window;
+            } else {
+                return value;
+            }
+        }
+    }
+
+    /** Forget the move-ordering statistics (killer moves and history)
+     *  gathered by my earlier searches. */
+    void clear() {
+        for (int[] killers : _killers) {
+            Arrays.fill(killers, 0);
+        }
+        Arrays.fill(_history, 0);
+    }
+
+    /** Return the move chosen by my last search. */
+    Move bestMove() {
+        return _bestMove;
+    }
+
+    /** Return the value found by the last completed iteration of my
+     *  last search. */
+    int bestValue() {
+        return _value;
+    }
+
+    /** Return the depth of the last completed iteration of my last
+     *  search (0 if none completed). */
+    int depthReached() {
+        return _depth;
+    }
+
+    /** Return the line of play expected from the position of my last
+     *  search, as found by its last completed iteration and starting with
+     *  bestMove().  Lines ended by a transposition-table cutoff are
+     *  truncated there. */
+    List<Move> principalVariation() {
+        return _principalVariation;
+    }
+
+    /** Return the effective branching factor of my last search: the
+     *  ratio of the number of positions visited by its last completed
+     *  iteration to the number visited by the one before (or, if there
+     *  was only one, the DEPTH-th root of its node count).  The better
+     *  the move ordering, the smaller this is. */
+    double branchingFactor() {
+        return _branchingFactor;
+    }
+
+    /** Return the number of positions visited by my last search. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the number of transposition-table lookups made by my last
+     *  search. */
+    long tableProbes() {
+        return _tableProbes;
+    }
+
+    /** Return the number of successful transposition-table lookups made
+     *  by my last search. */
+    long tableHits() {
+        return _tableHits;
+    }
+
+    /** Return the number of beta cutoffs in my last search. */
+    long cutoffs() {
+        return _cutoffs;
+    }
+
+    /** Return the number of beta cutoffs in my last search caused by the
+     *  first move searched.  The ratio of this to cutoffs() measures the
+     *  quality of move ordering. */
+    long firstMoveCutoffs() {
+        return _firstMoveCutoffs;
+    }
+
+    /** Return the estimated time spent in static evaluation during my
+     *  last search, in nanoseconds. */
+    long evalNanos() {
+        return _evalNanos;
+    }
+
+    /** Return the estimated time spent in move generation during my last
+     *  search, in nanoseconds. */
+    long genNanos() {
+        return _genNanos;
+    }
+
+    /** Sort _rootMoves so that those that did best for the side whose
+     *  SENSE is given in the last iteration come first, with the move
+     *  chosen by that iteration at the front. */
+    private void orderRootMoves(int sense) {
+        int worst = -sense * INFTY;
+        _rootMoves.sort((m0, m1) ->
+                        Integer.compare(sense * _rootValues.getOrDefault(m1,
+                                                                   worst),
+                                        sense * _rootValues.getOrDefault(m0,
+                                                                   worst)));
+        if (_foundMove != null) {
+            _rootMoves.remove(_foundMove);
+            _rootMoves.add(0, _foundMove);
+        }
+    }
+
+    /** Find a move from position BOARD and return its value, recording
+     *  the move found in _foundMove iff SAVEMOVE. The move
+     *  should have maximal value or have value > BETA if SENSE==1,
+     *  and minimal value or value < ALPHA if SENSE==-1. Searches up to
+     *  DEPTH levels.  Searching at level 0 simply returns a static estimate
+     *  of the board value and does not set _foundMove. If the game is over
+     *  on BOARD, does not set _foundMove.
+     *
+     *  This is a principal variation search: each move after the first
+     *  is searched with a null window, which suffices to show that it is
+     *  no better than the first, and is searched again with the full
+     *  window only if it turns out to be better.  The line of play
+     *  expected from BOARD is left in _pv. */
+    private int findMove(Board board, int depth, boolean saveMove,
+                         int sense, int alpha, int beta) {
+        _nodes += 1;
+        if (_nodes % CLOCK_INTERVAL == 0
+            && (_stop.get() || System.currentTimeMillis() > _deadline.get())) {
+            throw SearchTimeout.INSTANCE;
+        }
+        int ply = board.movesMade() - _rootPly;
+        _pvLength[ply] = 0;
+        if (board.gameOver()) {
+            return finalValue(board, depth);
+        }
+        if (depth == 0) {
+            return timedEstimate(board);
+        }
+
+        long key = board.key();
+        long entry = _table.probe(key);
+        _tableProbes += 1;
+        Move hashMove = null;
+        if (entry != 0) {
+            _tableHits += 1;
+            hashMove = move(entry);
+            if (!saveMove && depth(entry) >= depth) {
+                int v = value(entry);
+                if (bound(entry) == EXACT) {
+                    return v;
+                } else if (bound(entry) == LOWER) {
+                    alpha = Math.max(alpha, v);
+                } else {
+                    beta = Math.min(beta, v);
+                }
+                if (alpha >= beta) {
+                    return v;
+                }
+            }
+        }
+
+        int[] moves = _moves[ply];
+        int numMoves;
+        if (saveMove) {
+            numMoves = _rootMoves.size();
+            for (int i = 0; i < numMoves; i += 1) {
+                moves[i] = _rootMoves.get(i).index();
+            }
+        } else {
+            _genCalls += 1;
+            if ((_genCalls & SAMPLE_MASK) == 0) {
+                long start = System.nanoTime();
+                numMoves = board.legalMoves(moves);
+                _genNanos += (System.nanoTime() - start) * (SAMPLE_MASK + 1);
+            } else {
+                numMoves = board.legalMoves(moves);
+            }
+        }
+        int[] scores = _scores[ply];
+        if (saveMove) {
+            if (hashMove != null) {
+                toFront(moves, numMoves, hashMove.index());
+            }
+        } else {
+            scoreMoves(moves, scores, numMoves,
+                       hashMove == null ? 0 : hashMove.index(), ply);
+        }
+        int alpha0 = alpha, beta0 = beta;
+        int best = sense == 1 ? -INFTY : INFTY;
+        Move bestMove = null;
+        for (int i = 0; i < numMoves; i += 1) {
+            if (!saveMove) {
+                selectNext(moves, scores, i, numMoves);
+            }
+            Move move = Move.mv(moves[i]);
+            board.makeMove(moves[i]);
+            int v;
+            if (i == 0) {
+                v = findMove(board, depth - 1, false, -sense, alpha, beta);
+            } else if (sense == 1) {
+                v = findMove(board, depth - 1, false, -1, alpha, alpha + 1);
+                if (v > alpha && v < beta && depth > 1) {
+                    v = findMove(board, depth - 1, false, -1, alpha, beta);
+                }
+            } else {
+                v = findMove(board, depth - 1, false, 1, beta - 1, beta);
+                if (v < beta && v > alpha && depth > 1) {
+                    v = findMove(board, depth - 1, false, 1, alpha, beta);
+                }
+            }
+            board.retract();
+            if (saveMove) {
+                _rootValues.put(move, v);
+            }
+            if (sense == 1) {
+                if (v > best) {
+                    best = v;
+                    bestMove = move;
+                    savePV(moves[i], ply);
+                }
+                alpha = Math.max(alpha, v);
+            } else {
+                if (v < best) {
+                    best = v;
+                    bestMove = move;
+                    savePV(moves[i], ply);
+                }
+                beta = Math.min(beta, v);
+            }
+            if (alpha >= beta) {
+                _cutoffs += 1;
+                if (i == 0) {
+                    _firstMoveCutoffs += 1;
+                }
+                if (!move.isCapture()) {
+                    recordCutoff(moves[i], depth, ply);
+                }
+                break;
+            }
+        }
+        if (bestMove == null) {
+            return estimate(board);
+        }
+
+        int bound = best <= alpha0 ? UPPER : best >= beta0 ? LOWER : EXACT;
+        _table.store(key, depth, bound, best, bestMove);
+        if (saveMove) {
+            _foundMove = bestMove;
+        }
+        return best;
+    }
+
+    /** Set SCORES[0 .. N-1] to the priorities with which MOVES[0 .. N-1]
+     *  are to be searched at PLY: HASHMOVE (the move from the
+     *  transposition table, if any) first, then the killer moves for
+     *  PLY, then captures, then the rest according to their history
+     *  scores.  Captures are also ranked by history among themselves.
+     *  (A capture in this game gains no material, and trying captures
+     *  ahead of killers costs more nodes than it saves.) */
+    private void scoreMoves(int[] moves, int[] scores, int n, int hashMove,
+                            int ply) {
+        int[] killers = _killers[ply];
+        for (int i = 0; i < n; i += 1) {
+            int move = moves[i];
+            int score = _history[move >>> 1];
+            if (move == hashMove) {
+                score = HASH_MOVE_SCORE;
+            } else if (move == killers[0] || move == killers[1]) {
+                score += KILLER_SCORE;
+            } else if ((move & 1) != 0) {
+                score += CAPTURE_SCORE;
+            }
+            scores[i] = score;
+        }
+    }
+
+    /** Exchange the move in MOVES[K .. N-1] whose score in SCORES is
+     *  greatest with MOVES[K] (and likewise for SCORES).  Selecting moves
+     *  one at a time saves sorting the many that a cutoff makes
+     *  unnecessary. */
+    private static void selectNext(int[] moves, int[] scores, int k, int n) {
+        int best = k;
+        for (int i = k + 1; i < n; i += 1) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        if (best != k) {
+            int move = moves[k], score = scores[k];
+            moves[k] = moves[best];
+            scores[k] = scores[best];
+            moves[best] = move;
+            scores[best] = score;
+        }
+    }
+
+    /** Record that the quiet move MOVE caused a cutoff in a search to
+     *  DEPTH at PLY, making it a killer move for PLY and raising its
+     *  history score. */
+    private void recordCutoff(int move, int depth, int ply) {
+        int[] killers = _killers[ply];
+        if (killers[0] != move) {
+            killers[1] = killers[0];
+            killers[0] = move;
+        }
+        int h = _history[move >>> 1] + depth * depth;
+        if (h >= CAPTURE_SCORE) {
+            for (int i = 0; i < _history.length; i += 1) {
+                _history[i] >>>= 1;
+            }
+            h >>>= 1;
+        }
+        _history[move >>> 1] = h;
+    }
+
+    /** Record the line consisting of MOVE followed by the expected line
+     *  from the position after it as the expected line from PLY. */
+    private void savePV(int move, int ply) {
+        int[] pv = _pv[ply];
+        pv[0] = move;
+        int n = _pvLength[ply + 1];
+        System.arraycopy(_pv[ply + 1], 0, pv, 1, n);
+        _pvLength[ply] = n + 1;
+    }
+
+    /** Move MOVE, if it is among MOVES[0 .. N-1], to MOVES[0], keeping the
+     *  others in order. */
+    private static void toFront(int[] moves, int n, int move) {
+        for (int i = 0; i < n; i += 1) {
+            if (moves[i] == move) {
+                System.arraycopy(moves, 0, moves, 1, i);
+                moves[0] = move;
+                return;
+            }
+        }
+    }
+
+    /** Return the value of BOARD, on which the game is over, when found
+     *  with DEPTH levels still to search.  Quicker wins are worth more. */
+    private int finalValue(Board board, int depth) {
+        switch (board.winner()) {
+        case WP:
+            return WINNING_VALUE + depth;
+        case BP:
+            return -WINNING_VALUE - depth;
+        default:
+            return 0;
+        }
+    }
+
+    /** Return estimate(BOARD), timing one call in every SAMPLE_MASK + 1
+     *  to estimate the total time spent in evaluation. */
+    private int timedEstimate(Board board) {
+        _evalCalls += 1;
+        if ((_evalCalls & SAMPLE_MASK) != 0) {
+            return estimate(board);
+        }
+        long start = System.nanoTime();
+        int value = estimate(board);
+        _evalNanos += (System.nanoTime() - start) * (SAMPLE_MASK + 1);
+        return value;
+    }
+
+    /** Return a heuristic estimate of the value of BOARD (positive
+     *  favors white). */
+    private int estimate(Board board) {
+        return _evaluator.evaluate(board);
+    }
+
+    /** Static evaluation function. */
+    private final Evaluator _evaluator;
+    /** Results of searches, possibly shared with other Searchers. */
+    private final TranspositionTable _table;
+    /** Set to abandon the current search. */
+    private final AtomicBoolean _stop;
+    /** My private copy of the board being searched. */
+    private final Board _board = new Board();
+
+    /** Used to convey moves discovered by findMove. */
+    private Move _foundMove;
+    /** Best move found by the last completed iteration. */
+    private Move _bestMove;
+    /** Value and depth of the last completed iteration. */
+    private int _value, _depth;
+    /** Effective branching factor of the last completed iteration. */
+    private double _branchingFactor;
+    /** Number of positions visited in the current search. */
+    private long _nodes;
+    /** Number of transposition-table lookups and successful lookups in
+     *  the current search. */
+    private long _tableProbes, _tableHits;
+    /** Number of beta cutoffs, and of those caused by the first move
+     *  searched, in the current search. */
+    private long _cutoffs, _firstMoveCutoffs;
+    /** Numbers of calls to the evaluation and the move generator in the
+     *  current search, and estimates of the time spent in each, in
+     *  nanoseconds. */
+    private long _evalCalls, _genCalls, _evalNanos, _genNanos;
+    /** Time (as for System.currentTimeMillis) at which the current search
+     *  must stop, possibly shared with other Searchers. */
+    private final AtomicLong _deadline;
+    /** Buffers for the moves generated at each depth below the root, so
+     *  that the search allocates no move lists. */
+    private final int[][] _moves = new int[MAX_DEPTH + 1][Board.MAX_MOVES];
+    /** _pv[P][0 .. _pvLength[P]-1] is the line expected from the
+     *  position at ply P of the current search. */
+    private final int[][] _pv = new int[MAX_DEPTH + 2][MAX_DEPTH + 1];
+    /** Lengths of the lines in _pv. */
+    private final int[] _pvLength = new int[MAX_DEPTH + 2];
+    /** The expected line found by the last completed iteration. */
+    private List<Move> _principalVariation;
+    /** Ordering scores for the moves in _moves. */
+    private final int[][] _scores = new int[MAX_DEPTH + 1][Board.MAX_MOVES];
+    /** The two most recent quiet moves to cause a cutoff at each ply. */
+    private final int[][] _killers = new int[MAX_DEPTH + 1][2];
+    /** History scores, indexed by Move.index() >>> 1 (that is, by origin
+     *  and destination): the sum of DEPTH * DEPTH over the searches to
+     *  DEPTH in which the move caused a cutoff, aged at each new search. */
+    private final int[] _history = new int[Move.MAX_INDEX / 2];
+    /** Value of _board.movesMade() at the root of the current search. */
+    private int _rootPly;
+    /** The legal moves from the position being searched, best first. */
+    private List<Move> _rootMoves;
+    /** Values found for the moves in _rootMoves by the last iteration
+     *  (bounds only, for moves other than the best). */
+    private HashMap<Move, Integer> _rootValues;
+
+    /** Thrown to abandon a search that has run out of time. */
+    private static class SearchTimeout extends RuntimeException {
+        /** Serialization version. */
+        private static final long serialVersionUID = 1L;
+
+        /** The sole instance, which needs no stack trace. */
+        static final SearchTimeout INSTANCE = new SearchTimeout();
+
+        /** The SearchTimeout. */
+        private SearchTimeout() {
+            super("search timed out", null, false, false);
+        }
+    }
+
+}
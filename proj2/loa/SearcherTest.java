@@ -0,0 +1,138 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static loa.Piece.*;
+
+/** Tests of the Searcher class.
+ *  @author Tasman Kuang
+ */
+public class SearcherTest {
+
+    /** Test that the values found by iterative deepening (with aspiration
+     *  windows, principal variation search, move ordering, and a
+     *  transposition table kept across searches of a position) agree
+     *  with plain minimax to the same depth.  A position can recur only
+     *  after four moves, where no depth remains to be searched, so to
+     *  depth 4 the transposition table cannot change the value. */
+    @Test
+    public void testAgreesWithMinimax() {
+        Evaluator evaluator = new Evaluator();
+        for (Board b : positions()) {
+            Searcher searcher =
+                new Searcher(evaluator, new TranspositionTable(1 << 20),
+                             new AtomicBoolean(),
+                             new AtomicLong(Long.MAX_VALUE));
+            for (int depth = 1; depth <= 4; depth += 1) {
+                Move move = searcher.search(b, 1, depth);
+                if (searcher.depthReached() < depth) {
+                    continue;
+                }
+                int expected = minimax(evaluator, b, depth);
+                assertEquals("value at depth " + depth, expected,
+                             searcher.bestValue());
+                Board after = new Board(b);
+                after.makeMove(move);
+                assertEquals("value of move at depth " + depth, expected,
+                             minimax(evaluator, after, depth - 1));
+            }
+        }
+    }
+
+    /** A position (rows 1 to 8) in which black, to move, has no legal
+     *  moves although the game is not over: each black piece is in a
+     *  corner, hemmed in by white pieces. */
+    static final Piece[][] STUCK = {
+        { BP,  WP,  EMP, EMP, EMP, EMP, EMP, EMP },
+        { WP,  WP,  EMP, EMP, EMP, EMP, EMP, EMP },
+        { EMP, EMP, EMP, EMP, EMP, EMP, EMP, EMP },
+        { EMP, EMP, EMP, EMP, EMP, EMP, EMP, EMP },
+        { EMP, EMP, EMP, EMP, EMP, EMP, EMP, EMP },
+        { EMP, EMP, EMP, EMP, EMP, EMP, EMP, EMP },
+        { EMP, EMP, EMP, EMP, EMP, EMP, WP,  WP  },
+        { EMP, EMP, EMP, EMP, EMP, EMP, WP,  BP  },
+    };
+
+    /** Test that searching, or asking a MachinePlayer for a move, in a
+     *  position with no legal moves yields null rather than failing,
+     *  leaving the static value as the searcher's value. */
+    @Test
+    public void testNoLegalMoves() {
+        Board b = new Board(STUCK, BP);
+        assertFalse("game over", b.gameOver());
+        assertTrue("legal moves", b.legalMoves().isEmpty());
+        Evaluator evaluator = new Evaluator();
+        Searcher searcher =
+            new Searcher(evaluator, new TranspositionTable(1 << 10),
+                         new AtomicBoolean(), new AtomicLong(Long.MAX_VALUE));
+        assertNull("search", searcher.search(b, 1, 3));
+        assertEquals("value", evaluator.evaluate(b), searcher.bestValue());
+        MachinePlayer player = new MachinePlayer();
+        player.setMaxDepth(3);
+        assertNull("machine player", player.searchForMove(b, 0));
+        player.shutdown();
+    }
+
+    /** Return the positions on which the searcher is tested: two fixed
+     *  positions and some reached by random play. */
+    private static List<Board> positions() {
+        List<Board> result = new ArrayList<>();
+        result.add(new Board(BoardTest.BOARD1, BP));
+        result.add(new Board(BoardTest.BOARD1, WP));
+        Random random = new Random(61);
+        while (result.size() < 6) {
+            Board b = new Board();
+            for (int k = 0; k < 10 && !b.gameOver(); k += 1) {
+                List<Move> moves = b.legalMoves();
+                b.makeMove(moves.get(random.nextInt(moves.size())));
+            }
+            if (!b.gameOver()) {
+                result.add(b);
+            }
+        }
+        return result;
+    }
+
+    /** Return the value of B to DEPTH levels by plain minimax, with the
+     *  same conventions as Searcher: positive values favor white, a won
+     *  game is worth WINNING_VALUE plus the depth remaining, and a
+     *  position with no moves is worth its static value. */
+    private static int minimax(Evaluator evaluator, Board b, int depth) {
+        if (b.gameOver()) {
+            switch (b.winner()) {
+            case WP:
+                return Searcher.WINNING_VALUE + depth;
+            case BP:
+                return -Searcher.WINNING_VALUE - depth;
+            default:
+                return 0;
+            }
+        }
+        if (depth == 0) {
+            return evaluator.evaluate(b);
+        }
+        List<Move> moves = b.legalMoves();
+        if (moves.isEmpty()) {
+            return evaluator.evaluate(b);
+        }
+        int sense = b.turn() == WP ? 1 : -1;
+        int best = -sense * Searcher.INFTY;
+        for (Move move : moves) {
+            b.makeMove(move);
+            int v = minimax(evaluator, b, depth - 1);
+            b.retract();
+            best = sense == 1 ? Math.max(best, v) : Math.min(best, v);
+        }
+        return best;
+    }
+
+}
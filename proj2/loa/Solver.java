@@ -0,0 +1,299 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.util.Arrays;
+
+import static loa.Piece.*;
+
+/** A depth-first proof-number (df-pn) solver, which tries to prove that
+ *  one side can force a win from a position.  Each position searched
+ *  carries a proof number (an estimate of how many positions must be
+ *  searched to prove that its side to move meets its goal) and a
+ *  disproof number (likewise, to prove that it does not), stored from
+ *  the point of view of the side to move.  The goal of the side whose
+ *  win is sought (the target) is to win; that of its opponent is to
+ *  win or tie.  The search always expands the most-proving child,
+ *  returning to the parent only when the child's numbers pass
+ *  thresholds derived from its siblings'.
+ *
+ *  The numbers are kept in a fixed-size table of primitive arrays, in
+ *  which a new entry always replaces the old entry in its slot, so that
+ *  memory use is bounded.  Each position being searched also keeps the
+ *  last known numbers of its children, so that siblings that replace
+ *  each other's entries do not make it search them over and over.
+ *  Because whether a position is tied depends on the number of moves
+ *  made, that number is part of each position's key (which also makes
+ *  the searched graph acyclic).  A search ends when the position is
+ *  solved or when its node or time budget is spent.
+ *  @author Tasman Kuang
+ */
+class Solver {
+
+    /** Results of solve: the side to move can force a win, its opponent
+     *  can force a win, neither can (with best play the game is tied),
+     *  or the budget ran out first. */
+    static final int WIN = 1, LOSS = 2, DRAW = 3, UNSOLVED = 0;
+
+    /** Names of the results, indexed by result. */
+    static final String[] RESULT_NAMES = {
+        "unsolved", "win", "loss", "draw"
+    };
+
+    /** Default number of table entries. */
+    static final int DEFAULT_ENTRIES = 1 << 19;
+
+    /** A proof or disproof number meaning "impossible". */
+    static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    /** Limit on the length of the lines searched. */
+    static final int MAX_PLY = 2 * Board.DEFAULT_MOVE_LIMIT + 8;
+
+    /** A solver with a table of DEFAULT_ENTRIES entries. */
+    Solver() {
+        this(DEFAULT_ENTRIES);
+    }
+
+    /** A solver with a table of about ENTRIES entries. */
+    Solver(int entries) {
+        int size = Integer.highestOneBit(Math.max(entries, 1 << 10));
+        _keys = new long[size];
+        _phi = new int[size];
+        _delta = new int[size];
+        _mask = size - 1;
+    }
+
+    /** Try to solve BOARD, on which the game is not over, visiting at most
+     *  MAXNODES positions and finishing by time DEADLINE (as for
+     *  System.currentTimeMillis).  Returns WIN, LOSS, DRAW, or UNSOLVED,
+     *  from the point of view of the side to move.  After a WIN,
+     *  winningMove() is a move that wins.  BOARD is not changed. */
+    int solve(Board board, long maxNodes, long deadline) {
+        _board.copyFrom(board);
+        _nodes = 0;
+        _maxNodes = maxNodes;
+        _deadline = deadline;
+        _winningMove = null;
+        long start = System.currentTimeMillis();
+
+        int result = UNSOLVED;
+        if (prove(_board.turn())) {
+            result = WIN;
+        } else if (!_outOfBudget) {
+            if (prove(_board.turn().opposite())) {
+                result = LOSS;
+            } else if (!_outOfBudget) {
+                result = DRAW;
+            }
+        }
+        _millis = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    /** Remove all entries from my table. */
+    void clear() {
+        Arrays.fill(_keys, 0);
+        Arrays.fill(_phi, 0);
+        Arrays.fill(_delta, 0);
+    }
+
+    /** Return a winning move found by the last solve that returned WIN,
+     *  or null. */
+    Move winningMove() {
+        return _winningMove;
+    }
+
+    /** Return the number of positions visited by the last solve. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the time taken by the last solve, in milliseconds. */
+    long millis() {
+        return _millis;
+    }
+
+    /** Return true iff TARGET can force a win from _board, as proven
+     *  within the budget.  If so, and TARGET is to move, sets
+     *  _winningMove. */
+    private boolean prove(Piece target) {
+        Arrays.fill(_keys, 0);
+        _target = target;
+        _outOfBudget = false;
+        _rootWin = -1;
+        search(0, INFINITY, INFINITY);
+        if (_target != _board.turn()) {
+            return _rootDelta == 0;
+        }
+        if (_rootPhi == 0 && _rootWin >= 0) {
+            _winningMove = Move.mv(_rootWin);
+        }
+        return _rootPhi == 0;
+    }
+
+    /** Search _board, PLY moves from the root, until its proof number
+     *  reaches PHILIMIT or its disproof number reaches DELTALIMIT, or the
+     *  budget is spent, and record its numbers.  A position whose game is
+     *  over or that is MAX_PLY moves deep is recorded as terminal, so
+     *  that its status does not depend on the table.  At the root, also
+     *  sets _rootPhi, _rootDelta, and (if it is proven) _rootWin. */
+    private void search(int ply, int phiLimit, int deltaLimit) {
+        _nodes += 1;
+        if ((_nodes & CLOCK_MASK) == 0
+            && System.currentTimeMillis() >= _deadline
+            || _nodes >= _maxNodes) {
+            _outOfBudget = true;
+        }
+        long key = key();
+        if (_board.gameOver() || ply >= MAX_PLY) {
+            recordTerminal(key);
+            if (ply == 0) {
+                _rootPhi = _phi[slot(key)];
+                _rootDelta = _delta[slot(key)];
+            }
+            return;
+        }
+        int[] moves = _moves[ply];
+        long[] keys = _childKeys[ply];
+        int[] phis = _childPhi[ply], deltas = _childDelta[ply];
+        int n = _board.legalMoves(moves);
+        for (int k = 0; k < n; k += 1) {
+            _board.makeMove(moves[k]);
+            keys[k] = key();
+            if (_board.gameOver() || ply + 1 >= MAX_PLY) {
+                recordTerminal(keys[k]);
+            }
+            int i = slot(keys[k]);
+            phis[k] = _keys[i] == keys[k] ? _phi[i] : 1;
+            deltas[k] = _keys[i] == keys[k] ? _delta[i] : 1;
+            _board.retract();
+        }
+
+        while (true) {
+            int phi = INFINITY, delta = 0, best = -1;
+            int bestPhi = 0, secondDelta = INFINITY;
+            for (int k = 0; k < n; k += 1) {
+                int i = slot(keys[k]);
+                if (_keys[i] == keys[k]) {
+                    phis[k] = _phi[i];
+                    deltas[k] = _delta[i];
+                }
+                int childPhi = phis[k], childDelta = deltas[k];
+                if (childDelta < phi) {
+                    secondDelta = phi;
+                    phi = childDelta;
+                    best = k;
+                    bestPhi = childPhi;
+                } else if (childDelta < secondDelta) {
+                    secondDelta = childDelta;
+                }
+                delta = Math.min(INFINITY, delta + childPhi);
+            }
+            if (n == 0) {
+                phi = INFINITY;
+                delta = 0;
+            }
+            if (phi >= phiLimit || delta >= deltaLimit || _outOfBudget) {
+                record(key, phi, delta);
+                if (ply == 0) {
+                    _rootPhi = phi;
+                    _rootDelta = delta;
+                    if (phi == 0) {
+                        _rootWin = moves[best];
+                    }
+                }
+                return;
+            }
+            int childPhiLimit =
+                Math.min(INFINITY, deltaLimit - delta + bestPhi);
+            int childDeltaLimit = Math.min(phiLimit, secondDelta + 1);
+            _board.makeMove(moves[best]);
+            search(ply + 1, childPhiLimit, childDeltaLimit);
+            _board.retract();
+            int i = slot(keys[best]);
+            phis[best] = _phi[i];
+            deltas[best] = _delta[i];
+        }
+    }
+
+    /** Record the numbers of the position with key KEY, which is now on
+     *  _board and is over or at the limit of search. */
+    private void recordTerminal(long key) {
+        Piece winner = _board.winner();
+        Piece toMove = _board.turn();
+        boolean goalMet;
+        if (winner == null || winner == EMP) {
+            goalMet = toMove != _target;
+        } else {
+            goalMet = winner == toMove;
+        }
+        record(key, goalMet ? 0 : INFINITY, goalMet ? INFINITY : 0);
+    }
+
+    /** Record that the position with key KEY has proof number PHI and
+     *  disproof number DELTA. */
+    private void record(long key, int phi, int delta) {
+        int i = slot(key);
+        _keys[i] = key;
+        _phi[i] = phi;
+        _delta[i] = delta;
+    }
+
+    /** Return the key of _board, including the number of moves made
+     *  (which, since the move limit is fixed during a solve, determines
+     *  the number left before the game is tied). */
+    private long key() {
+        return _board.key() + (_board.movesMade() + 1) * KEY_MULTIPLIER;
+    }
+
+    /** Return the slot for KEY. */
+    private int slot(long key) {
+        return (int) (key ^ (key >>> 32)) & _mask;
+    }
+
+    /** Multiplier mixing the number of moves made into keys. */
+    private static final long KEY_MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+    /** Check the clock once every CLOCK_MASK + 1 nodes. */
+    private static final int CLOCK_MASK = (1 << 10) - 1;
+
+    /** Keys, proof numbers, and disproof numbers of recorded
+     *  positions. */
+    private final long[] _keys;
+    /** Proof numbers, by slot. */
+    private final int[] _phi;
+    /** Disproof numbers, by slot. */
+    private final int[] _delta;
+    /** Mask giving the slot of a hashed key. */
+    private final int _mask;
+    /** The board being searched. */
+    private final Board _board = new Board();
+    /** Legal moves at each ply. */
+    private final int[][] _moves = new int[MAX_PLY + 1][Board.MAX_MOVES];
+    /** Keys of the positions after each of _moves. */
+    private final long[][] _childKeys =
+        new long[MAX_PLY + 1][Board.MAX_MOVES];
+    /** Last known proof and disproof numbers of the positions after each
+     *  of _moves, used when their table entries have been replaced. */
+    private final int[][] _childPhi = new int[MAX_PLY + 1][Board.MAX_MOVES],
+        _childDelta = new int[MAX_PLY + 1][Board.MAX_MOVES];
+    /** The side whose win is sought. */
+    private Piece _target;
+    /** Number of positions visited and limit on that number. */
+    private long _nodes, _maxNodes;
+    /** Time by which the search must end. */
+    private long _deadline;
+    /** Time taken by the last solve. */
+    private long _millis;
+    /** True iff the current proof ran out of nodes or time. */
+    private boolean _outOfBudget;
+    /** Proof and disproof numbers of the root at the end of the last
+     *  search. */
+    private int _rootPhi, _rootDelta;
+    /** A move from the root to a child with disproof number 0 (a winning
+     *  move), as an index, or -1. */
+    private int _rootWin;
+    /** A winning move for the side to move, or null. */
+    private Move _winningMove;
+
+}
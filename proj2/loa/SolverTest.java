@@ -0,0 +1,114 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static loa.Piece.*;
+
+/** Tests of the Solver class.
+ *  @author Tasman Kuang
+ */
+public class SolverTest {
+
+    /** Test that the wins the proof-number solver finds near the ends of
+     *  random games that were won are consistent: the winning move either
+     *  wins at once or leaves a lost position. */
+    @Test
+    public void testSolver() {
+        Solver solver = new Solver(1 << 16);
+        Random random = new Random(61);
+        int wins;
+        for (int games = wins = 0; games < 5; ) {
+            Board b = new Board();
+            List<Move> played = new ArrayList<>();
+            while (!b.gameOver()) {
+                List<Move> moves = b.legalMoves();
+                played.add(moves.get(random.nextInt(moves.size())));
+                b.makeMove(played.get(played.size() - 1));
+            }
+            if (b.winner() == EMP) {
+                continue;
+            }
+            games += 1;
+            int start = Math.max(0, played.size() - 5);
+            for (int k = played.size(); k > start; k -= 1) {
+                b.retract();
+            }
+            for (int k = start; k < played.size(); k += 1) {
+                if (solver.solve(b, 20000, Long.MAX_VALUE) == Solver.WIN) {
+                    wins += 1;
+                    Board after = new Board(b);
+                    after.makeMove(solver.winningMove());
+                    if (after.gameOver()) {
+                        assertEquals("immediate win", b.turn(),
+                                     after.winner());
+                    } else {
+                        assertEquals("lost after winning move", Solver.LOSS,
+                                     solver.solve(after, 20000,
+                                                  Long.MAX_VALUE));
+                    }
+                }
+                b.makeMove(played.get(k));
+            }
+        }
+        assertTrue("wins found", wins >= 5);
+    }
+
+    /** Test that a solver with the smallest table, in which entries are
+     *  often overwritten, reaches the same verdicts as one with a large
+     *  table near the ends of random games, and that its winning moves
+     *  win. */
+    @Test
+    public void testSmallTable() {
+        Solver small = new Solver(1 << 10), large = new Solver(1 << 20);
+        Random random = new Random(17);
+        int solved = 0;
+        for (int games = 0; games < 8; ) {
+            Board b = new Board();
+            List<Move> played = new ArrayList<>();
+            while (!b.gameOver()) {
+                List<Move> moves = b.legalMoves();
+                played.add(moves.get(random.nextInt(moves.size())));
+                b.makeMove(played.get(played.size() - 1));
+            }
+            if (b.winner() == EMP) {
+                continue;
+            }
+            games += 1;
+            int start = Math.max(0, played.size() - 3);
+            for (int k = played.size(); k > start; k -= 1) {
+                b.retract();
+            }
+            for (int k = start; k < played.size(); k += 1) {
+                int expected = large.solve(b, 50000, Long.MAX_VALUE);
+                int result = small.solve(b, 50000, Long.MAX_VALUE);
+                if (expected != Solver.UNSOLVED
+                    && result != Solver.UNSOLVED) {
+                    solved += 1;
+                    assertEquals("verdict", expected, result);
+                }
+                if (result == Solver.WIN) {
+                    Board after = new Board(b);
+                    after.makeMove(small.winningMove());
+                    if (after.gameOver()) {
+                        assertEquals("immediate win", b.turn(),
+                                     after.winner());
+                    } else {
+                        assertEquals("lost after winning move", Solver.LOSS,
+                                     large.solve(after, 50000,
+                                                 Long.MAX_VALUE));
+                    }
+                }
+                b.makeMove(played.get(k));
+            }
+        }
+        assertTrue("positions solved", solved >= 12);
+    }
+
+}
@@ -7,6 +7,16 @@ package loa;
  */
 class TextReporter implements Reporter {
 
+    /** A TextReporter that does not display search summaries. */
+    TextReporter() {
+        this(false);
+    }
+
+    /** A TextReporter that displays search summaries iff SHOWSEARCH. */
+    TextReporter(boolean showSearch) {
+        _showSearch = showSearch;
+    }
+
     @Override
     public void reportError(String fmt, Object... args) {
         System.err.printf(fmt, args);
@@ -23,4 +33,14 @@ class TextReporter implements Reporter {
     public void reportMove(Move move) {
         System.out.printf("* %s%n", move);
     }
+
+    @Override
+    public void reportSearch(SearchStats stats) {
+        if (_showSearch) {
+            System.out.printf("* %s%n", stats);
+        }
+    }
+
+    /** True iff I display search summaries. */
+    private final boolean _showSearch;
 }
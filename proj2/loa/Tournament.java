@@ -0,0 +1,425 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ucb.util.CommandArgs;
+
+import static loa.Piece.*;
+
+/** Plays many games between two automated player configurations without
+ *  a display, several at a time.  Usage:
+ *      java loa.Tournament [ --games=N ] [ --time=SECS ] [ --parallel=N ]
+ *                          [ --clock=[M/]S[+I] ] [ --record=FILE ]
+ *                          [ PLAYER1 [ PLAYER2 ] ]
+ *  Each PLAYER is a comma-separated list of settings of the form
+ *  depth=N, hash=MB, threads=N, solver=N (nodes per move for the
+ *  proof-number solver; 0 to disable it), or weights=FILE (evaluation
+ *  weights, as written by loa.Tuner) (default DEFAULT_PLAYER) for a
+ *  MachinePlayer, or mcts followed by settings threads=N or playouts=N
+ *  for an MCTSPlayer.  Plays N
+ *  games (rounded up to an even number), allowing SECS seconds per move
+ *  (default: no limit, so that depth alone limits the search), running
+ *  up to N games at once (default: one per processor).  The games come
+ *  in pairs that start from the same randomly chosen opening, with
+ *  PLAYER1 playing white in one and black in the other.  Reports the
+ *  results from PLAYER1's point of view, the Elo difference they imply
+ *  with its 95% confidence interval, the speed of each player's search
+ *  (in nodes or playouts per second),
+ *  and statistics on the lengths of the games.  With --clock, each game
+ *  is instead timed by a chess clock (see Clock.parse), from which the
+ *  players budget their time, and the report counts losses on time.
+ *  With --record, appends a record of each game to FILE (see
+ *  GameRecord).
+ *  @author Tasman Kuang
+ */
+class Tournament {
+
+    /** Default number of games. */
+    static final int DEFAULT_GAMES = 100;
+
+    /** Default player settings. */
+    static final String DEFAULT_PLAYER = "depth=3";
+
+    /** Number of random moves in each opening. */
+    static final int OPENING_MOVES = 4;
+
+    /** Random seed, for reproducible openings. */
+    static final long SEED = 61;
+
+    /** Multiple of the standard error giving a 95% confidence
+     *  interval. */
+    static final double Z95 = 1.96;
+
+    /** Run the tournament described by ARGS. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--games=(\\d+){0,1} --time=(\\d+\\.?\\d*){0,1} "
+                            + "--parallel=([1-9]\\d*){0,1} --record=(.+){0,1} "
+                            + "--clock=(.+){0,1} --=(.*){0,2}",
+                            args);
+        if (!options.ok()) {
+            usage();
+        }
+        List<String> specs = options.get("--");
+        String spec1 = specs.size() > 0 ? specs.get(0) : DEFAULT_PLAYER,
+            spec2 = specs.size() > 1 ? specs.get(1) : DEFAULT_PLAYER;
+        int games = options.contains("--games")
+            ? options.getInt("--games") : DEFAULT_GAMES;
+        long moveTime = options.contains("--time")
+            ? Game.millis(options.getDouble("--time")) : 0;
+        if (moveTime < 0) {
+            usage();
+        }
+        int parallel = options.contains("--parallel")
+            ? options.getInt("--parallel")
+            : Runtime.getRuntime().availableProcessors();
+
+        Player player1, player2;
+        Clock clock;
+        try {
+            player1 = player(spec1);
+            player2 = player(spec2);
+            clock = options.contains("--clock")
+                ? Clock.parse(options.getFirst("--clock")) : null;
+        } catch (IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            usage();
+            return;
+        }
+        GameRecord.Writer recorder = null;
+        if (options.contains("--record")) {
+            try {
+                recorder =
+                    GameRecord.append(new File(options.getFirst("--record")));
+            } catch (IOException excp) {
+                System.err.printf("Error: could not open record file: %s%n",
+                                  excp.getMessage());
+                System.exit(1);
+            }
+        }
+        List<Outcome> outcomes =
+            play(player1, player2, (games + 1) / 2, moveTime, clock,
+                 parallel, recorder);
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException excp) {
+                System.err.printf("Error: could not write record file: %s%n",
+                                  excp.getMessage());
+            }
+        }
+        report(spec1, spec2, outcomes);
+    }
+
+    /** Print a usage message and exit. */
+    static void usage() {
+        System.err.println("Usage: java loa.Tournament [ --games=N ] "
+                           + "[ --time=SECS ] [ --parallel=N ]");
+        System.err.println("                           "
+                           + "[ --clock=[M/]S[+I] ] [ --record=FILE ]");
+        System.err.println("                           "
+                           + "[ PLAYER1 [ PLAYER2 ] ]");
+        System.err.println("  PLAYER: comma-separated settings "
+                           + "depth=N, hash=MB, threads=N, solver=N,");
+        System.err.println("          weights=FILE,");
+        System.err.println("          or mcts followed by "
+                           + "threads=N, playouts=N");
+        System.exit(1);
+    }
+
+    /** Return a template player with the settings in SPEC (as described
+     *  for main). */
+    static Player player(String spec) {
+        String[] settings = spec.split(",");
+        if (settings[0].trim().equals("mcts")) {
+            return mctsPlayer(settings);
+        }
+        MachinePlayer player = new MachinePlayer();
+        for (String setting : settings) {
+            String[] parts = setting.trim().split("=");
+            if (parts[0].equals("weights") && parts.length == 2) {
+                try {
+                    player.setEvaluator(Evaluator.read(new File(parts[1])));
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+                continue;
+            }
+            int value;
+            try {
+                value = parts.length == 2 ? Integer.parseInt(parts[1]) : -1;
+            } catch (NumberFormatException excp) {
+                value = -1;
+            }
+            if (value < 0 || value == 0 && !parts[0].equals("solver")) {
+                throw new IllegalArgumentException("bad setting: " + setting);
+            }
+            switch (parts[0]) {
+            case "depth":
+                if (value > MachinePlayer.MAX_DEPTH) {
+                    throw new IllegalArgumentException("depth too large: "
+                                                       + value);
+                }
+                player.setMaxDepth(value);
+                break;
+            case "hash":
+                player.setTableSize((long) value << 20);
+                break;
+            case "threads":
+                player.setThreads(value);
+                break;
+            case "solver":
+                player.setSolverNodes(value);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown setting: "
+                                                   + parts[0]);
+            }
+        }
+        return player;
+    }
+
+    /** Return a template MCTSPlayer with SETTINGS[1 ..] (as described for
+     *  main). */
+    static MCTSPlayer mctsPlayer(String[] settings) {
+        MCTSPlayer player = new MCTSPlayer();
+        for (int i = 1; i < settings.length; i += 1) {
+            String[] parts = settings[i].trim().split("=");
+            int value;
+            try {
+                value = parts.length == 2 ? Integer.parseInt(parts[1]) : 0;
+            } catch (NumberFormatException excp) {
+                value = 0;
+            }
+            if (value <= 0) {
+                throw new IllegalArgumentException("bad setting: "
+                                                   + settings[i]);
+            }
+            switch (parts[0]) {
+            case "threads":
+                player.setThreads(value);
+                break;
+            case "playouts":
+                player.setPlayouts(value);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown setting: "
+                                                   + parts[0]);
+            }
+        }
+        return player;
+    }
+
+    /** Play PAIRS pairs of games between players made from PLAYER1 and
+     *  PLAYER2, allowing MOVETIME milliseconds per move (0 for no limit)
+     *  or, if CLOCK is not null, timing each game with a copy of CLOCK,
+     *  with up to PARALLEL games in progress at once, and recording each
+     *  game to RECORDER if it is not null.  Returns their outcomes, in
+     *  order. */
+    static List<Outcome> play(Player player1, Player player2,
+                              int pairs, long moveTime, Clock clock,
+                              int parallel, GameRecord.Writer recorder) {
+        ExecutorService pool = Executors.newFixedThreadPool(parallel);
+        List<Future<Outcome>> games = new ArrayList<>();
+        for (int k = 0; k < pairs; k += 1) {
+            List<Move> opening = opening(new Random(SEED + k));
+            games.add(pool.submit(() -> playGame(player1, player2, opening,
+                                                 moveTime, clock,
+                                                 recorder)));
+            games.add(pool.submit(() -> playGame(player2, player1, opening,
+                                                 moveTime, clock, recorder)
+                                  .reversed()));
+        }
+        List<Outcome> outcomes = new ArrayList<>();
+        try {
+            for (Future<Outcome> game : games) {
+                outcomes.add(game.get());
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new Error("tournament game failed", excp);
+        } finally {
+            pool.shutdownNow();
+        }
+        return outcomes;
+    }
+
+    /** Return OPENING_MOVES random moves from the initial position, chosen
+     *  using RANDOM. */
+    static List<Move> opening(Random random) {
+        Board board = new Board();
+        List<Move> moves = new ArrayList<>();
+        for (int i = 0; i < OPENING_MOVES; i += 1) {
+            List<Move> legal = board.legalMoves();
+            Move move = legal.get(random.nextInt(legal.size()));
+            board.makeMove(move);
+            moves.add(move);
+        }
+        return moves;
+    }
+
+    /** Play one game after OPENING between players made from WHITE and
+     *  BLACK, allowing MOVETIME milliseconds per move or timing it with a
+     *  copy of CLOCK if it is not null, and recording it to RECORDER if it
+     *  is not null, and return its outcome from white's point of view. */
+    static Outcome playGame(Player white, Player black,
+                            List<Move> opening, long moveTime, Clock clock,
+                            GameRecord.Writer recorder) {
+        Game game = new Game(new NullView(), null, new NullReporter(),
+                             new HumanPlayer(), white, false);
+        game.setMoveTime(moveTime);
+        game.setClock(clock == null ? null : new Clock(clock));
+        game.setRecorder(recorder);
+        Piece winner = game.playMatch(white, black, opening);
+        long[] w = finish(game.getPlayer(WP)),
+            b = finish(game.getPlayer(BP));
+        return new Outcome(winner == WP ? 1.0 : winner == BP ? 0.0 : 0.5,
+                           game.getBoard().movesMade(),
+                           !game.getBoard().gameOver(),
+                           w[0], w[1], b[0], b[1]);
+    }
+
+    /** Stop PLAYER's helper threads, and return the number of nodes it
+     *  visited (or playouts it ran) and its total search time, in
+     *  milliseconds. */
+    static long[] finish(Player player) {
+        if (player instanceof MCTSPlayer) {
+            MCTSPlayer mcts = (MCTSPlayer) player;
+            mcts.shutdown();
+            return new long[] { mcts.totalPlayouts(), mcts.totalTime() };
+        }
+        MachinePlayer machine = (MachinePlayer) player;
+        machine.shutdown();
+        return new long[] { machine.totalNodes(), machine.totalTime() };
+    }
+
+    /** Print a summary of OUTCOMES of games between players with settings
+     *  SPEC1 and SPEC2. */
+    static void report(String spec1, String spec2, List<Outcome> outcomes) {
+        int n = outcomes.size();
+        int wins, draws, losses, winsOnTime, lossesOnTime;
+        wins = draws = losses = winsOnTime = lossesOnTime = 0;
+        long nodes1, time1, nodes2, time2;
+        nodes1 = time1 = nodes2 = time2 = 0;
+        int minLength = Integer.MAX_VALUE, maxLength = 0;
+        double sumLength = 0.0, sumSqLength = 0.0;
+        for (Outcome outcome : outcomes) {
+            if (outcome.score == 1.0) {
+                wins += 1;
+                winsOnTime += outcome.onTime ? 1 : 0;
+            } else if (outcome.score == 0.0) {
+                losses += 1;
+                lossesOnTime += outcome.onTime ? 1 : 0;
+            } else {
+                draws += 1;
+            }
+            nodes1 += outcome.nodes1;
+            time1 += outcome.time1;
+            nodes2 += outcome.nodes2;
+            time2 += outcome.time2;
+            minLength = Math.min(minLength, outcome.length);
+            maxLength = Math.max(maxLength, outcome.length);
+            sumLength += outcome.length;
+            sumSqLength += (double) outcome.length * outcome.length;
+        }
+
+        double score = (wins + 0.5 * draws) / n;
+        double variance =
+            (wins * sq(1.0 - score) + draws * sq(0.5 - score)
+             + losses * sq(score)) / n;
+        double margin = Z95 * Math.sqrt(variance / n);
+        double meanLength = sumLength / n;
+
+        System.out.printf("%s vs. %s: %d games, +%d =%d -%d "
+                          + "(score %.1f%%)%n",
+                          spec1, spec2, n, wins, draws, losses, 100 * score);
+        System.out.printf("Elo difference: %+.0f (95%% confidence: "
+                          + "%+.0f to %+.0f)%n",
+                          elo(score), elo(score - margin),
+                          elo(score + margin));
+        if (winsOnTime + lossesOnTime > 0) {
+            System.out.printf("On time: +%d -%d%n", winsOnTime,
+                              lossesOnTime);
+        }
+        System.out.printf("Game length: mean %.1f, s.d. %.1f, "
+                          + "min %d, max %d moves%n",
+                          meanLength,
+                          Math.sqrt(Math.max(0.0, sumSqLength / n
+                                             - sq(meanLength))),
+                          minLength, maxLength);
+        System.out.printf("Speed: %.0f %s/sec. (%s), %.0f %s/sec. (%s)%n",
+                          rate(nodes1, time1), unit(spec1), spec1,
+                          rate(nodes2, time2), unit(spec2), spec2);
+    }
+
+    /** Return the unit of search speed for a player with settings
+     *  SPEC. */
+    private static String unit(String spec) {
+        return spec.trim().startsWith("mcts") ? "playouts" : "nodes";
+    }
+
+    /** Return the Elo rating difference implied by an expected SCORE
+     *  (between 0 and 1). */
+    static double elo(double score) {
+        if (score <= 0.0) {
+            return Double.NEGATIVE_INFINITY;
+        } else if (score >= 1.0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return -400.0 * Math.log10(1.0 / score - 1.0);
+    }
+
+    /** Return X squared. */
+    private static double sq(double x) {
+        return x * x;
+    }
+
+    /** Return the rate of NODES per second in MILLIS milliseconds. */
+    private static double rate(long nodes, long millis) {
+        return millis == 0 ? 0.0 : 1000.0 * nodes / millis;
+    }
+
+    /** The result of one game, from the point of view of a player 1. */
+    static class Outcome {
+        /** An outcome in which player 1 scored SCORE (1 for a win, 0.5 for
+         *  a tie, 0 for a loss) in a game of LENGTH moves, decided on time
+         *  iff ONTIME, and players 1 and 2 visited NODES1 and NODES2
+         *  positions in TIME1 and TIME2 milliseconds of searching. */
+        Outcome(double score, int length, boolean onTime, long nodes1,
+                long time1, long nodes2, long time2) {
+            this.score = score;
+            this.length = length;
+            this.onTime = onTime;
+            this.nodes1 = nodes1;
+            this.time1 = time1;
+            this.nodes2 = nodes2;
+            this.time2 = time2;
+        }
+
+        /** Return this outcome from player 2's point of view. */
+        Outcome reversed() {
+            return new Outcome(1.0 - score, length, onTime, nodes2, time2,
+                               nodes1, time1);
+        }
+
+        /** Player 1's score. */
+        final double score;
+        /** Number of moves in the game. */
+        final int length;
+        /** True iff the game was lost on time. */
+        final boolean onTime;
+        /** Positions visited (or playouts run) by and search time of
+         *  each player. */
+        final long nodes1, time1, nodes2, time2;
+    }
+
+}
@@ -0,0 +1,143 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.util.Arrays;
+
+/** A fixed-size table of search results, indexed by Board.key().  Each
+ *  entry records the value found for a position, whether that value is
+ *  exact or only a bound, the depth to which it was searched, and the
+ *  best move found.  A new entry replaces an old one in the same slot only
+ *  if the old one comes from an earlier search or was searched no deeper
+ *  than the new one (replace-by-depth).
+ *
+ *  Entries are packed into longs to avoid allocating objects during
+ *  search.  probe returns such a packed entry (or 0 for a miss), whose
+ *  fields are extracted with the static methods value, depth, bound,
+ *  and move.
+ *
+ *  Several threads may use one table at once without locking.  Each slot
+ *  holds the key XORed with the entry, so that a slot whose two halves
+ *  were written by different threads is simply treated as a miss.
+ *  @author Tasman Kuang
+ */
+class TranspositionTable {
+
+    /** Values of bound(ENTRY): the recorded value is exact, a lower bound,
+     *  or an upper bound on the position's true value. */
+    static final int EXACT = 0, LOWER = 1, UPPER = 2;
+
+    /** Bytes used by one entry (a key and a packed entry). */
+    static final int ENTRY_BYTES = 16;
+
+    /** Fewest entries in any table. */
+    static final int MIN_ENTRIES = 1 << 10;
+
+    /** A table using at most BYTES bytes of storage (but at least
+     *  MIN_ENTRIES entries). */
+    TranspositionTable(long bytes) {
+        long entries = Long.highestOneBit(Math.max(bytes / ENTRY_BYTES,
+                                                   MIN_ENTRIES));
+        entries = Math.min(entries, 1 << 30);
+        _keys = new long[(int) entries];
+        _entries = new long[(int) entries];
+        _mask = (int) entries - 1;
+    }
+
+    /** Return the number of entries in this table. */
+    int size() {
+        return _keys.length;
+    }
+
+    /** Start a new search, which ages all existing entries (so that they
+     *  may be replaced regardless of depth). */
+    void newSearch() {
+        _generation = (_generation + 1) & GEN_MASK;
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        Arrays.fill(_keys, 0);
+        Arrays.fill(_entries, 0);
+    }
+
+    /** Return the packed entry stored for the position with key KEY, or 0
+     *  if there is none. */
+    long probe(long key) {
+        int i = (int) key & _mask;
+        long entry = _entries[i];
+        if (entry != 0 && (_keys[i] ^ entry) == key) {
+            return entry;
+        }
+        return 0;
+    }
+
+    /** Record that the position with key KEY, searched to DEPTH, has
+     *  value VALUE, which is of kind BOUND (EXACT, LOWER, or UPPER), and
+     *  that MOVE (possibly null) is the best move found. */
+    void store(long key, int depth, int bound, int value, Move move) {
+        int i = (int) key & _mask;
+        long old = _entries[i];
+        if (old != 0 && generation(old) == _generation
+            && depth(old) > depth) {
+            return;
+        }
+        long entry = VALID
+            | ((long) _generation << GEN_SHIFT)
+            | ((long) (move == null ? 0 : move.index()) << MOVE_SHIFT)
+            | ((long) bound << BOUND_SHIFT)
+            | ((long) Math.min(depth, DEPTH_MASK) << DEPTH_SHIFT)
+            | (value & VALUE_MASK);
+        _keys[i] = key ^ entry;
+        _entries[i] = entry;
+    }
+
+    /** Return the value recorded in ENTRY. */
+    static int value(long entry) {
+        return (int) entry;
+    }
+
+    /** Return the search depth recorded in ENTRY. */
+    static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & DEPTH_MASK;
+    }
+
+    /** Return the kind of bound (EXACT, LOWER, or UPPER) recorded in
+     *  ENTRY. */
+    static int bound(long entry) {
+        return (int) (entry >>> BOUND_SHIFT) & BOUND_MASK;
+    }
+
+    /** Return the best move recorded in ENTRY, or null if none. */
+    static Move move(long entry) {
+        return Move.mv((int) (entry >>> MOVE_SHIFT) & MOVE_MASK);
+    }
+
+    /** Return the generation recorded in ENTRY. */
+    private static int generation(long entry) {
+        return (int) (entry >>> GEN_SHIFT) & GEN_MASK;
+    }
+
+    /** Layout of a packed entry: value in bits 0-31, then depth, bound,
+     *  move index, and generation, with VALID set in every entry. */
+    private static final int
+        DEPTH_SHIFT = 32, DEPTH_MASK = 0xff,
+        BOUND_SHIFT = 40, BOUND_MASK = 0x3,
+        MOVE_SHIFT = 42, MOVE_MASK = 0x1fff,
+        GEN_SHIFT = 55, GEN_MASK = 0xff;
+    /** Mask for the value field of an entry. */
+    private static final long VALUE_MASK = 0xffffffffL;
+    /** Bit set in every stored entry, so that no entry is 0. */
+    private static final long VALID = 1L << 63;
+
+    /** Keys of the positions stored in each slot, each XORed with the
+     *  entry in the slot. */
+    private final long[] _keys;
+    /** Packed entries for each slot, or 0 if empty. */
+    private final long[] _entries;
+    /** Mask selecting a slot from a key. */
+    private final int _mask;
+    /** Current search generation. */
+    private int _generation;
+
+}
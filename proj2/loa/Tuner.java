@@ -0,0 +1,470 @@
+/* Skeleton Copyright (C) 2015, 2020 Paul N. Hilfinger and the Regents of the
+ * University of California.  All rights reserved. */
+package loa;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ucb.util.CommandArgs;
+
+import static loa.Evaluator.NUM_FEATURES;
+import static loa.Piece.*;
+
+/** Fits the weights of the static evaluation to the outcomes of games
+ *  (Texel's method).  Usage:
+ *      java loa.Tuner [ --games=N ] [ --depth=N ] [ --parallel=N ]
+ *                     [ --iterations=N ] [ --output=FILE ] [ LOG ... ]
+ *  Collects the quiet positions (those from which the move played was
+ *  not a capture, and which did not follow a capture) of the games
+ *  recorded in the LOG files (as written by the --log option of
+ *  loa.Main, or game records as written by its --record option), or,
+ *  if there are none, of N
+ *  (default DEFAULT_GAMES) games of self-play at depth N (default
+ *  DEFAULT_DEPTH) from random openings, labeled with the outcomes of
+ *  their games.  It then chooses the weights that minimize the mean
+ *  squared difference between each outcome (1 for a white win, 0 for a
+ *  black win, 0.5 for a tie) and a logistic function of the position's
+ *  evaluation, by ITERATIONS steps of gradient descent, computing the
+ *  gradient on N threads (default: one per processor).  Writes the
+ *  resulting weights, rounded to integers, to FILE (default: the
+ *  standard output) in the form read by Evaluator.read, which can be
+ *  given to loa.Main with --weights=FILE.
+ *  @author Tasman Kuang
+ */
+class Tuner {
+
+    /** Default number of self-play games. */
+    static final int DEFAULT_GAMES = 500;
+
+    /** Default depth of self-play searches. */
+    static final int DEFAULT_DEPTH = 3;
+
+    /** Default number of steps of gradient descent. */
+    static final int DEFAULT_ITERATIONS = 2000;
+
+    /** Number of moves at the start of each game whose positions are not
+     *  used. */
+    static final int SKIP_MOVES = Tournament.OPENING_MOVES;
+
+    /** Step size and decay rates of the moment estimates for the Adam
+     *  method of gradient descent. */
+    static final double STEP = 0.02, BETA1 = 0.9, BETA2 = 0.999;
+
+    /** Number of positions in each piece of work for a thread computing
+     *  the gradient. */
+    static final int CHUNK = 1 << 16;
+
+    /** Run the tuner as described by ARGS. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--games=([1-9]\\d*){0,1} "
+                            + "--depth=([1-9]\\d*){0,1} "
+                            + "--parallel=([1-9]\\d*){0,1} "
+                            + "--iterations=(\\d+){0,1} --output=(.+){0,1} "
+                            + "--=(.*)",
+                            args);
+        if (!options.ok()) {
+            System.err.println("Usage: java loa.Tuner [ --games=N ] "
+                               + "[ --depth=N ] [ --parallel=N ]");
+            System.err.println("                      [ --iterations=N ] "
+                               + "[ --output=FILE ] [ LOG ... ]");
+            System.exit(1);
+        }
+        int parallel = options.contains("--parallel")
+            ? options.getInt("--parallel")
+            : Runtime.getRuntime().availableProcessors();
+        int iterations = options.contains("--iterations")
+            ? options.getInt("--iterations") : DEFAULT_ITERATIONS;
+
+        Positions positions;
+        try {
+            List<String> logs = options.get("--");
+            if (logs.isEmpty()) {
+                positions =
+                    selfPlay(options.contains("--games")
+                             ? options.getInt("--games") : DEFAULT_GAMES,
+                             options.contains("--depth")
+                             ? options.getInt("--depth") : DEFAULT_DEPTH,
+                             parallel);
+            } else {
+                positions = new Positions();
+                for (String log : logs) {
+                    File file = new File(log);
+                    if (GameRecord.isRecordFile(file)) {
+                        readRecords(file, positions);
+                    } else {
+                        readLog(file, positions);
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.err.printf("%d positions%n", positions.size());
+        if (positions.size() == 0) {
+            System.exit(1);
+        }
+
+        Tuner tuner = new Tuner(positions, parallel);
+        double[] weights = new double[NUM_FEATURES];
+        for (int f = 0; f < NUM_FEATURES; f += 1) {
+            weights[f] = Evaluator.DEFAULT_WEIGHTS[f];
+        }
+        double scale = tuner.fitScale(weights);
+        System.err.printf("scale %.6f, error %.6f%n", scale,
+                          tuner.error(weights, scale));
+        tuner.descend(weights, scale, iterations);
+        int[] rounded = new int[NUM_FEATURES];
+        for (int f = 0; f < NUM_FEATURES; f += 1) {
+            rounded[f] = (int) Math.round(weights[f]);
+            System.err.printf("%s %.3f%n", Evaluator.FEATURE_NAMES[f],
+                              weights[f]);
+        }
+        System.err.printf("error %.6f (%.6f after rounding)%n",
+                          tuner.error(weights, scale),
+                          tuner.error(toDoubles(rounded), scale));
+        tuner.shutdown();
+
+        Evaluator result = new Evaluator(rounded);
+        if (options.contains("--output")) {
+            try (PrintStream out = new PrintStream(
+                     new FileOutputStream(options.getFirst("--output")))) {
+                result.write(out);
+            } catch (IOException excp) {
+                System.err.printf("Error: %s%n", excp.getMessage());
+                System.exit(1);
+            }
+        } else {
+            result.write(System.out);
+        }
+    }
+
+    /** A Tuner fitting weights to POSITIONS using THREADS threads. */
+    Tuner(Positions positions, int threads) {
+        _positions = positions;
+        _pool = Executors.newFixedThreadPool(threads);
+    }
+
+    /** Stop my threads. */
+    void shutdown() {
+        _pool.shutdownNow();
+    }
+
+    /** Return the factor by which evaluations using WEIGHTS are scaled
+     *  before applying the logistic function that minimizes the
+     *  error. */
+    double fitScale(double[] weights) {
+        double lo = Math.log(1e-6), hi = Math.log(1.0);
+        for (int i = 0; i < 60; i += 1) {
+            double m1 = lo + (hi - lo) / 3, m2 = hi - (hi - lo) / 3;
+            if (error(weights, Math.exp(m1)) < error(weights, Math.exp(m2))) {
+                hi = m2;
+            } else {
+                lo = m1;
+            }
+        }
+        return Math.exp((lo + hi) / 2);
+    }
+
+    /** Return the mean squared error of the predictions made by WEIGHTS
+     *  with SCALE. */
+    double error(double[] weights, double scale) {
+        return sums(weights, scale)[NUM_FEATURES];
+    }
+
+    /** Adjust WEIGHTS by ITERATIONS steps of gradient descent on the error
+     *  with SCALE. */
+    void descend(double[] weights, double scale, int iterations) {
+        double[] m = new double[NUM_FEATURES], v = new double[NUM_FEATURES];
+        for (int t = 1; t <= iterations; t += 1) {
+            double[] gradient = sums(weights, scale);
+            for (int f = 0; f < NUM_FEATURES; f += 1) {
+                m[f] = BETA1 * m[f] + (1 - BETA1) * gradient[f];
+                v[f] = BETA2 * v[f] + (1 - BETA2) * gradient[f] * gradient[f];
+                double mHat = m[f] / (1 - Math.pow(BETA1, t)),
+                    vHat = v[f] / (1 - Math.pow(BETA2, t));
+                weights[f] -= STEP * mHat / (Math.sqrt(vHat) + 1e-12);
+            }
+        }
+    }
+
+    /** Return the gradient of the mean squared error of the predictions
+     *  made by WEIGHTS with SCALE, followed by the error itself,
+     *  computed in parallel over pieces of _positions. */
+    private double[] sums(double[] weights, double scale) {
+        List<Future<double[]>> parts = new ArrayList<>();
+        int n = _positions.size();
+        for (int start = 0; start < n; start += CHUNK) {
+            int from = start, to = Math.min(n, start + CHUNK);
+            parts.add(_pool.submit(() -> _positions.sums(weights, scale,
+                                                         from, to)));
+        }
+        double[] total = new double[NUM_FEATURES + 1];
+        try {
+            for (Future<double[]> part : parts) {
+                double[] sums = part.get();
+                for (int f = 0; f <= NUM_FEATURES; f += 1) {
+                    total[f] += sums[f];
+                }
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new Error("gradient computation failed", excp);
+        }
+        for (int f = 0; f <= NUM_FEATURES; f += 1) {
+            total[f] /= n;
+        }
+        return total;
+    }
+
+    /** Return the positions from GAMES games of self-play between
+     *  MachinePlayers searching to DEPTH, playing up to PARALLEL games
+     *  at once. */
+    static Positions selfPlay(int games, int depth, int parallel) {
+        ExecutorService pool = Executors.newFixedThreadPool(parallel);
+        ThreadLocal<MachinePlayer> players = ThreadLocal.withInitial(() -> {
+            MachinePlayer player = new MachinePlayer();
+            player.setMaxDepth(depth);
+            return player;
+        });
+        List<Future<Positions>> results = new ArrayList<>();
+        for (int k = 0; k < games; k += 1) {
+            List<Move> opening =
+                Tournament.opening(new Random(Tournament.SEED + k));
+            results.add(pool.submit(() -> selfPlayGame(players.get(),
+                                                       opening)));
+        }
+        Positions positions = new Positions();
+        try {
+            for (Future<Positions> result : results) {
+                positions.addAll(result.get());
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new Error("self-play failed", excp);
+        } finally {
+            pool.shutdownNow();
+        }
+        return positions;
+    }
+
+    /** Return the positions from a game played by PLAYER against itself
+     *  after OPENING. */
+    private static Positions selfPlayGame(MachinePlayer player,
+                                          List<Move> opening) {
+        Board board = new Board();
+        for (Move move : opening) {
+            board.makeMove(move);
+        }
+        Positions game = new Positions();
+        boolean captured = false;
+        while (!board.gameOver()) {
+            Move move = player.searchForMove(board, 0);
+            if (move == null) {
+                break;
+            }
+            game.addPosition(board, captured || move.isCapture());
+            captured = move.isCapture();
+            board.makeMove(move);
+        }
+        game.setResults(board.winner());
+        return game;
+    }
+
+    /** Add the positions of the finished games recorded in LOG to
+     *  POSITIONS.  Unfinished games and commands other than moves, set,
+     *  and new are ignored. */
+    static void readLog(File log, Positions positions) throws IOException {
+        try (BufferedReader input = new BufferedReader(new FileReader(log))) {
+            Board board = new Board();
+            Positions game = new Positions();
+            boolean captured = false;
+            for (String line = input.readLine(); ; line = input.readLine()) {
+                String[] words =
+                    line == null ? new String[] { "new" }
+                    : line.trim().split("\\s+");
+                if (words[0].equals("new")) {
+                    if (board.gameOver()) {
+                        game.setResults(board.winner());
+                        positions.addAll(game);
+                    }
+                    if (line == null) {
+                        return;
+                    }
+                    board = new Board();
+                    game = new Positions();
+                    captured = false;
+                } else if (words[0].equals("set") && words.length >= 4) {
+                    try {
+                        Game.setSquare(board, words[1], words[2], words[3]);
+                    } catch (IllegalArgumentException excp) {
+                        continue;
+                    }
+                } else {
+                    Move move = Move.mv(words[0]);
+                    if (move != null && !board.gameOver()
+                        && board.isLegal(move)) {
+                        boolean capture = board.get(move.getTo()) != EMP;
+                        if (board.movesMade() >= SKIP_MOVES) {
+                            game.addPosition(board, captured || capture);
+                        }
+                        captured = capture;
+                        board.makeMove(move);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Add the positions of the finished games in the file of game
+     *  records RECORDS to POSITIONS, replaying each game to check it and
+     *  to label its positions with its actual result.  Games with illegal
+     *  moves are ignored. */
+    static void readRecords(File records, Positions positions)
+        throws IOException {
+        try (GameRecord.Reader reader =
+             new GameRecord.Reader(new FileInputStream(records))) {
+            Board board = new Board();
+            while (reader.next()) {
+                board.clear();
+                Positions game = new Positions();
+                boolean captured = false;
+                int k;
+                for (k = 0; k < reader.length(); k += 1) {
+                    Move move = Move.mv(reader.move(k));
+                    if (move == null || board.gameOver()
+                        || !board.isLegal(move)) {
+                        break;
+                    }
+                    boolean capture = board.get(move.getTo()) != EMP;
+                    if (k >= SKIP_MOVES) {
+                        game.addPosition(board, captured || capture);
+                    }
+                    captured = capture;
+                    board.makeMove(move.index());
+                }
+                if (k == reader.length() && board.gameOver()) {
+                    game.setResults(board.winner());
+                    positions.addAll(game);
+                }
+            }
+        }
+    }
+
+    /** Return WEIGHTS converted to doubles. */
+    private static double[] toDoubles(int[] weights) {
+        double[] result = new double[weights.length];
+        for (int f = 0; f < weights.length; f += 1) {
+            result[f] = weights[f];
+        }
+        return result;
+    }
+
+    /** A growable collection of positions, each stored as its feature
+     *  values and the result of its game. */
+    static class Positions {
+
+        /** Return the number of positions. */
+        int size() {
+            return _size;
+        }
+
+        /** Add BOARD with its result unknown, unless CAPTURES (meaning
+         *  that a capture led to or was made from BOARD). */
+        void addPosition(Board board, boolean captures) {
+            if (captures) {
+                return;
+            }
+            reserve(1);
+            for (int f = 0; f < NUM_FEATURES; f += 1) {
+                _features[_size * NUM_FEATURES + f] =
+                    Evaluator.feature(board, f);
+            }
+            _results[_size] = -1;
+            _size += 1;
+        }
+
+        /** Set the result of all positions whose result is unknown to
+         *  that of a game won by WINNER (EMP for a tie). */
+        void setResults(Piece winner) {
+            byte result = (byte) (winner == WP ? 2 : winner == BP ? 0 : 1);
+            for (int i = 0; i < _size; i += 1) {
+                if (_results[i] < 0) {
+                    _results[i] = result;
+                }
+            }
+        }
+
+        /** Add all of OTHER's positions to mine. */
+        void addAll(Positions other) {
+            reserve(other._size);
+            System.arraycopy(other._features, 0, _features,
+                             _size * NUM_FEATURES,
+                             other._size * NUM_FEATURES);
+            System.arraycopy(other._results, 0, _results, _size,
+                             other._size);
+            _size += other._size;
+        }
+
+        /** Return the sums, over positions FROM <= i < TO, of the
+         *  gradient of the squared error of the prediction made by
+         *  WEIGHTS with SCALE, followed by the sum of the squared
+         *  errors. */
+        double[] sums(double[] weights, double scale, int from, int to) {
+            double[] sums = new double[NUM_FEATURES + 1];
+            for (int i = from; i < to; i += 1) {
+                int base = i * NUM_FEATURES;
+                double eval = 0.0;
+                for (int f = 0; f < NUM_FEATURES; f += 1) {
+                    eval += weights[f] * _features[base + f];
+                }
+                double predicted = 1.0 / (1.0 + Math.exp(-scale * eval));
+                double diff = predicted - 0.5 * _results[i];
+                double d = 2.0 * diff * predicted * (1.0 - predicted) * scale;
+                for (int f = 0; f < NUM_FEATURES; f += 1) {
+                    sums[f] += d * _features[base + f];
+                }
+                sums[NUM_FEATURES] += diff * diff;
+            }
+            return sums;
+        }
+
+        /** Make room for N more positions. */
+        private void reserve(int n) {
+            if (_size + n > _results.length) {
+                int capacity = Math.max(_size + n, 2 * _results.length);
+                _features = Arrays.copyOf(_features,
+                                          capacity * NUM_FEATURES);
+                _results = Arrays.copyOf(_results, capacity);
+            }
+        }
+
+        /** Number of positions. */
+        private int _size;
+        /** Feature values of position i are _features[i * NUM_FEATURES
+         *  ... (i + 1) * NUM_FEATURES - 1]. */
+        private int[] _features = new int[16 * NUM_FEATURES];
+        /** Result of the game of position i: 2 for a white win, 1 for a
+         *  tie, 0 for a black win, or -1 if not yet known. */
+        private byte[] _results = new byte[16];
+    }
+
+    /** The positions to fit. */
+    private final Positions _positions;
+    /** Threads computing the gradient. */
+    private final ExecutorService _pool;
+
+}
@@ -15,6 +15,14 @@ public class UnitTests {
     public static void main(String[] ignored) {
         textui.runClasses(UnitTests.class);
         textui.runClasses(BoardTest.class);
+        textui.runClasses(OpeningBookTest.class);
+        textui.runClasses(EvaluatorTest.class);
+        textui.runClasses(SearcherTest.class);
+        textui.runClasses(SolverTest.class);
+        textui.runClasses(MCTSPlayerTest.class);
+        textui.runClasses(GameRecordTest.class);
+        textui.runClasses(ClockTest.class);
+        textui.runClasses(AnalyzerTest.class);
     }
 
     /** A dummy test to avoid complaint. */
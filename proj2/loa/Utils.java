@@ -27,6 +27,14 @@ class Utils {
         }
     }
 
+    /** Return the time LIMIT milliseconds after START (both as for
+     *  System.currentTimeMillis), or Long.MAX_VALUE if LIMIT <= 0 (no
+     *  limit) or the sum would overflow. */
+    static long deadline(long start, long limit) {
+        return limit <= 0 || limit >= Long.MAX_VALUE - start
+            ? Long.MAX_VALUE : start + limit;
+    }
+
     /** Set "strict" mode to STRICT, which causes any error to exit the
      *  program. */
     static void setStrict(boolean strict) {
@@ -0,0 +1,286 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+
+/** Delta encoding of one byte array (the target) against another (the
+ *  base).  A delta begins with the lengths of the base and target, as
+ *  variable-length integers (seven bits per byte, least significant
+ *  first, with the high bit set on all but the last byte), followed by
+ *  operations that build the target.  An operation byte N between 1 and
+ *  MAX_INSERT is followed by N bytes to insert; an operation byte 0 is
+ *  followed by an offset and a length, as variable-length integers,
+ *  giving a range of the base to copy.
+ *
+ *  To find copies, an Index maps each BLOCK-byte block of the base by a
+ *  hash of its contents; create then slides a window of BLOCK bytes
+ *  along the target, looking up its rolling hash, and extends a match in
+ *  both directions as far as the bytes agree.  An Index may be reused
+ *  to make deltas of many targets against the same base.
+ *  @author Tasman Kuang
+ */
+class Delta {
+
+    /** Length of the blocks of the base that are indexed. */
+    static final int BLOCK = 16;
+
+    /** Most bytes inserted by one operation. */
+    static final int MAX_INSERT = 127;
+
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+
+    /** Length of the windows hashed by sketch.  Longer than BLOCK, so
+     *  that a window seldom recurs in unrelated objects. */
+    private static final int SKETCH_WINDOW = 64;
+
+    /** PRIME to the power SKETCH_WINDOW - 1. */
+    private static final int SKETCH_POWER = power(PRIME, SKETCH_WINDOW - 1);
+
+    /** Odd multiplier that mixes the bits of hashes for sketch. */
+    private static final int MIX = 0x9e3779b1;
+
+    /** PRIME to the power BLOCK - 1, to remove the oldest byte from a
+     *  rolling hash. */
+    private static final int PRIME_POWER = power(PRIME, BLOCK - 1);
+
+    /** Return a delta that produces TARGET from BASE. */
+    static byte[] create(byte[] base, byte[] target) {
+        return create(new Index(base), target);
+    }
+
+    /** Return a delta that produces TARGET from the base indexed by
+     *  INDEX. */
+    static byte[] create(Index index, byte[] target) {
+        byte[] base = index._base;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+
+        int[] table = index._table;
+        int mask = table.length - 1;
+        int pending = 0, i = 0;
+        int hash = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            int start = table[hash & mask] - 1;
+            if (start >= 0 && matches(base, start, target, i)) {
+                int length = BLOCK;
+                while (start + length < base.length
+                       && i + length < target.length
+                       && base[start + length] == target[i + length]) {
+                    length += 1;
+                }
+                while (start > 0 && i > pending
+                       && base[start - 1] == target[i - 1]) {
+                    start -= 1;
+                    i -= 1;
+                    length += 1;
+                }
+                writeInserts(out, target, pending, i);
+                out.write(0);
+                writeVarint(out, start);
+                writeVarint(out, length);
+                i += length;
+                pending = i;
+                if (i + BLOCK <= target.length) {
+                    hash = hash(target, i);
+                }
+            } else {
+                if (i + BLOCK < target.length) {
+                    hash = (hash - target[i] * PRIME_POWER) * PRIME
+                        + target[i + BLOCK];
+                }
+                i += 1;
+            }
+        }
+        writeInserts(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Return the target produced by applying DELTA to BASE.  Throws
+     *  IllegalArgumentException if DELTA is malformed or was made
+     *  against a base of a different length. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = { 0 };
+        byte[] target;
+        int t = 0;
+        try {
+            if (readVarint(delta, pos) != base.length) {
+                throw new IllegalArgumentException("delta has wrong base");
+            }
+            target = new byte[readVarint(delta, pos)];
+            while (pos[0] < delta.length) {
+                int op = delta[pos[0]];
+                pos[0] += 1;
+                if (op == 0) {
+                    int offset = readVarint(delta, pos),
+                        length = readVarint(delta, pos);
+                    System.arraycopy(base, offset, target, t, length);
+                    t += length;
+                } else {
+                    System.arraycopy(delta, pos[0], target, t, op);
+                    pos[0] += op;
+                    t += op;
+                }
+            }
+        } catch (IndexOutOfBoundsException excp) {
+            throw new IllegalArgumentException("malformed delta");
+        }
+        if (t != target.length) {
+            throw new IllegalArgumentException("malformed delta");
+        }
+        return target;
+    }
+
+    /** Return a sketch of DATA: the least of the hashes of its
+     *  SKETCH_WINDOW-byte windows (or the hash of all of it, if shorter),
+     *  after mixing.  Objects that differ by small edits usually have the
+     *  same sketch, so sorting objects by sketch brings similar ones
+     *  together. */
+    static int sketch(byte[] data) {
+        Sketch sketch = new Sketch();
+        sketch.update(data, 0, data.length);
+        return sketch.value();
+    }
+
+    /** A sketch (as for Delta.sketch) of data presented in pieces, so
+     *  that an object can be sketched as it is streamed. */
+    static class Sketch {
+        /** Add the N bytes of DATA at START to the data sketched. */
+        void update(byte[] data, int start, int n) {
+            for (int k = start; k < start + n; k += 1) {
+                int slot = (int) (_size % SKETCH_WINDOW);
+                if (_size < SKETCH_WINDOW) {
+                    _hash = _hash * PRIME + data[k];
+                } else {
+                    _hash = (_hash - _window[slot] * SKETCH_POWER) * PRIME
+                        + data[k];
+                }
+                _window[slot] = data[k];
+                _size += 1;
+                if (_size == SKETCH_WINDOW) {
+                    _least = _hash * MIX;
+                } else if (_size > SKETCH_WINDOW) {
+                    _least = Math.min(_least, _hash * MIX);
+                }
+            }
+        }
+
+        /** Return the number of bytes sketched. */
+        long size() {
+            return _size;
+        }
+
+        /** Return the sketch of the data so far. */
+        int value() {
+            return _size < SKETCH_WINDOW ? _hash * MIX : _least;
+        }
+
+        /** The last SKETCH_WINDOW bytes, by position modulo
+         *  SKETCH_WINDOW. */
+        private final byte[] _window = new byte[SKETCH_WINDOW];
+        /** Number of bytes sketched. */
+        private long _size;
+        /** Hash of the last SKETCH_WINDOW bytes (or of all, if fewer). */
+        private int _hash;
+        /** Least mixed hash of a full window so far. */
+        private int _least;
+    }
+
+    /** An index of the blocks of a base. */
+    static class Index {
+        /** An index of BASE, mapping the hash of each BLOCK-byte block
+         *  of BASE (masked by the table's length less 1) to 1 + the
+         *  block's offset in BASE, or to 0 if no block has that hash.  Of
+         *  blocks with the same hash, the first is kept. */
+        Index(byte[] base) {
+            _base = base;
+            int blocks = base.length / BLOCK;
+            _table = new int[Integer.highestOneBit(Math.max(1, blocks)) * 4];
+            int mask = _table.length - 1;
+            for (int b = 0; b < blocks; b += 1) {
+                int slot = hash(base, b * BLOCK) & mask;
+                if (_table[slot] == 0) {
+                    _table[slot] = b * BLOCK + 1;
+                }
+            }
+        }
+
+        /** Return the base. */
+        byte[] base() {
+            return _base;
+        }
+
+        /** The base. */
+        private final byte[] _base;
+        /** Offsets of the blocks of _base, plus one, by hash. */
+        private final int[] _table;
+    }
+
+    /** Return true iff the BLOCK bytes of BASE at START equal those of
+     *  TARGET at I. */
+    private static boolean matches(byte[] base, int start, byte[] target,
+                                   int i) {
+        if (start + BLOCK > base.length) {
+            return false;
+        }
+        for (int k = 0; k < BLOCK; k += 1) {
+            if (base[start + k] != target[i + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the hash of the BLOCK bytes of DATA starting at I. */
+    private static int hash(byte[] data, int i) {
+        int hash = 0;
+        for (int k = 0; k < BLOCK; k += 1) {
+            hash = hash * PRIME + data[i + k];
+        }
+        return hash;
+    }
+
+    /** Return X to the power N. */
+    private static int power(int x, int n) {
+        int result = 1;
+        for (int k = 0; k < n; k += 1) {
+            result *= x;
+        }
+        return result;
+    }
+
+    /** Write operations to OUT inserting TARGET[FROM .. TO-1]. */
+    private static void writeInserts(ByteArrayOutputStream out,
+                                     byte[] target, int from, int to) {
+        while (from < to) {
+            int n = Math.min(MAX_INSERT, to - from);
+            out.write(n);
+            out.write(target, from, n);
+            from += n;
+        }
+    }
+
+    /** Write the variable-length form of VALUE >= 0 to OUT. */
+    static void writeVarint(ByteArrayOutputStream out, int value) {
+        while (value >= 0x80) {
+            out.write(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Return the variable-length integer in DATA at POS[0], advancing
+     *  POS[0] past it. */
+    static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = data[pos[0]] & 0xff;
+            pos[0] += 1;
+            value |= (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+        }
+    }
+
+}
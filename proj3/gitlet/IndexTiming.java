@@ -0,0 +1,124 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+/** Times finding the ids of the files of a working tree with and without
+ *  a StageIndex, sequentially and in parallel.  Usage:
+ *      java gitlet.IndexTiming [ FILES [ SIZE [ THREADS ] ] ]
+ *  makes a synthetic working tree of FILES files (default DEFAULT_FILES)
+ *  of about SIZE bytes (default DEFAULT_SIZE), as does StoreTiming, and
+ *  then times a status-like pass, reading the index, looking up the id
+ *  of every file, and saving the index, three times: with no index (so
+ *  that every file is hashed), with the index just saved (so that none
+ *  is), and after every hundredth file has been rewritten.  It then
+ *  times walking the tree with a WorkTree, with no index and with a
+ *  fresh one, using 1, 2, 4, ... threads, up to THREADS (default, the
+ *  number of processors), first as made (100 files to a directory) and
+ *  then with all the files moved into one directory, as in a Gitlet
+ *  working tree.  Everything is made in a temporary directory, which is
+ *  deleted afterward.
+ *  @author Tasman Kuang
+ */
+class IndexTiming {
+
+    /** Default number of files in the tree. */
+    static final int DEFAULT_FILES = 100000;
+
+    /** Default size of each file, in bytes. */
+    static final int DEFAULT_SIZE = 1024;
+
+    /** One in EDIT_INTERVAL files is rewritten before the last pass. */
+    static final int EDIT_INTERVAL = 100;
+
+    /** Time the passes on the tree described by ARGS. */
+    public static void main(String... args) throws IOException {
+        int files = args.length > 0 ? Integer.parseInt(args[0])
+            : DEFAULT_FILES;
+        int size = args.length > 1 ? Integer.parseInt(args[1])
+            : DEFAULT_SIZE;
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+            : Runtime.getRuntime().availableProcessors();
+        File root = Files.createTempDirectory("gitlet-timing").toFile();
+        try {
+            File tree = new File(root, "tree");
+            List<String> names = StoreTiming.makeTree(tree, files, size);
+            File index = new File(root, "index");
+            time("cold", index, tree, names);
+            time("warm", index, tree, names);
+            for (int i = 0; i < names.size(); i += EDIT_INTERVAL) {
+                File file = new File(tree, names.get(i));
+                Utils.writeContents(file, Utils.readContentsAsString(file)
+                                    + "edited\n");
+            }
+            time("edited", index, tree, names);
+            timeWalks("walk", threads, index, tree);
+            File flat = new File(root, "flat");
+            flat.mkdir();
+            for (String name : names) {
+                File file = new File(flat, name.replace('/', '-'));
+                new File(tree, name).renameTo(file);
+            }
+            timeWalks("flat walk", threads, index, flat);
+        } finally {
+            StoreTiming.delete(root);
+        }
+    }
+
+    /** Print the time taken to find the ids of the files NAMES under
+     *  TREE using the index in INDEX, labeled KIND. */
+    static void time(String kind, File index, File tree, List<String> names) {
+        long start = System.nanoTime();
+        StageIndex stage = new StageIndex(index);
+        long read = System.nanoTime();
+        for (String name : names) {
+            stage.hash(tree, name);
+        }
+        long scanned = System.nanoTime();
+        stage.save();
+        long saved = System.nanoTime();
+        System.out.printf("%s: %d files, %d hashed; read %.3f sec., "
+                          + "scan %.3f sec., save %.3f sec., "
+                          + "total %.3f sec.%n",
+                          kind, names.size(), stage.hashed(),
+                          (read - start) * 1e-9, (scanned - read) * 1e-9,
+                          (saved - scanned) * 1e-9, (saved - start) * 1e-9);
+    }
+
+    /** Print the times taken by timeWalk, labeled KIND, to hash the files
+     *  under TREE using 1, 2, 4, ... threads, up to THREADS, starting
+     *  each with no index in INDEX. */
+    static void timeWalks(String kind, int threads, File index, File tree) {
+        for (int n = 1; ; n = Math.min(2 * n, threads)) {
+            index.delete();
+            timeWalk(kind, n, index, tree);
+            if (n == threads) {
+                break;
+            }
+        }
+    }
+
+    /** Print the time taken to hash the files under TREE with a WorkTree
+     *  using THREADS threads, with no index in INDEX (saving one there),
+     *  and then with the index just saved, labeled KIND. */
+    static void timeWalk(String kind, int threads, File index, File tree) {
+        WorkTree work = new WorkTree(tree, threads,
+                                     Math.max(threads,
+                                              WorkTree.DEFAULT_IO_LIMIT));
+        double[] secs = new double[2];
+        int files = 0;
+        for (int pass = 0; pass < 2; pass += 1) {
+            long start = System.nanoTime();
+            StageIndex stage = new StageIndex(index);
+            files = work.hash(stage).size();
+            stage.save();
+            secs[pass] = (System.nanoTime() - start) * 1e-9;
+        }
+        System.out.printf("%s, %d threads: %d files; cold %.3f sec., "
+                          + "warm %.3f sec.%n", kind, threads, files,
+                          secs[0], secs[1]);
+    }
+
+}
@@ -13,10 +13,14 @@ public class Main {
     static final File REPO = Utils.join(CWD, ".gitlet");
     /** Object directory. */
     static final File OBJECT = Utils.join(REPO, "object");
+    /** Store of blobs, trees, and commits, in OBJECT. */
+    static final ObjectStore OBJECTS = new ObjectStore(OBJECT);
     /** Branch directory. */
     static final File BRANCH = Utils.join(REPO, "branch");
     /** Staging area. */
     static final File STAGE = Utils.join(REPO, "stage");
+    /** Index of the working tree's files (see StageIndex). */
+    static final File INDEX = Utils.join(STAGE, "index");
     /** Commit history. */
     static final File HISTORY = Utils.join(REPO, "history");
     /** Remote directory. */
@@ -30,13 +34,19 @@ public class Main {
             System.out.println("Please enter a command");
             return;
         }
-        if (args[0].equals("init")) {
+        switch (args[0]) {
+        case "init":
             init();
-        }
-        if (args[0].equals("commit")) {
+            break;
+        case "commit":
             commit();
+            break;
+        case "gc": case "repack":
+            gc();
+            break;
+        default:
+            System.out.println("I don't understand this command");
         }
-        System.out.println("I don't understand this command");
     }
     /** Initializes a git repo. */
     public static void init() {
@@ -57,4 +67,16 @@ public class Main {
     public static void commit() {
     }
 
+    /** Packs all objects into pack files, storing similar
+     *  objects as deltas, and removes their loose copies. */
+    public static void gc() {
+        if (!REPO.exists()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        int[] counts = OBJECTS.repack();
+        System.out.printf("Packed %d objects (%d as deltas).%n", counts[0],
+                          counts[1]);
+    }
+
 }
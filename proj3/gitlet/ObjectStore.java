@@ -0,0 +1,442 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** A content-addressed store of objects (blobs, and serialized commits
+ *  and trees) in a directory.  Each object is identified by the SHA-1
+ *  hash of its contents, as computed by Utils.sha1.  It is kept,
+ *  deflated, in a file named by the rest of its id in a subdirectory
+ *  named by its first FANOUT_DIGITS digits, so that no one directory
+ *  holds more than a small fraction of the objects.  Objects are
+ *  written to a temporary file and then renamed, so that a reader never
+ *  sees a partly written object.  Files are stored by putFile without
+ *  being read into memory, so that their size is not limited by the
+ *  heap.
+ *
+ *  The repack method moves all objects into Packs (in the PACK_DIR
+ *  subdirectory), in which similar objects are stored as deltas; there
+ *  is more than one only if the objects would overflow one pack.
+ *  Objects are looked up first among the loose files and then in the
+ *  packs.  A pack's index is written after the pack itself, so a
+ *  pack is used only once it is complete.
+ *  @author Tasman Kuang
+ */
+class ObjectStore {
+
+    /** Number of leading digits of an id that name its subdirectory. */
+    static final int FANOUT_DIGITS = 2;
+
+    /** Compression level of stored objects. */
+    static final int COMPRESSION = Deflater.BEST_SPEED;
+
+    /** Subdirectory holding packs. */
+    static final String PACK_DIR = "pack";
+
+    /** Suffixes of the names of pack files and pack indices. */
+    static final String PACK_SUFFIX = ".pack", INDEX_SUFFIX = ".idx";
+
+    /** Prefix of the names of objects being written, which are given
+     *  unique names by Files.createTempFile. */
+    static final String TEMP_PREFIX = "tmp-";
+
+    /** Size of buffers used to copy objects. */
+    static final int COPY_SIZE = 1 << 13;
+
+    /** Typical ratio of the size of an object to its deflated size. */
+    static final int INFLATION = 4;
+
+    /** A store of the objects in directory DIR, which need not yet
+     *  exist. */
+    ObjectStore(File dir) {
+        _dir = dir;
+    }
+
+    /** Return the directory holding my objects. */
+    File dir() {
+        return _dir;
+    }
+
+    /** Store CONTENTS, if not already present, and return its id. */
+    String put(byte[] contents) {
+        String id = Utils.sha1(contents);
+        if (!contains(id)) {
+            write(id, contents);
+        }
+        return id;
+    }
+
+    /** Store the contents of FILE, if not already present, and return
+     *  its id, without reading FILE into memory: FILE is hashed by
+     *  Utils.sha1(File) and, if new, streamed through a deflater into a
+     *  temporary file, being hashed again as it goes.  The object is
+     *  stored under that second hash, so it is intact even if FILE
+     *  changes meanwhile.  Throws IllegalArgumentException in case of
+     *  problems. */
+    String putFile(File file) {
+        String id = Utils.sha1(file);
+        if (contains(id)) {
+            return id;
+        }
+        _dir.mkdirs();
+        File temp = null;
+        MessageDigest md = Utils.sha1Digest();
+        Deflater deflater = new Deflater(COMPRESSION);
+        try {
+            temp = Files.createTempFile(_dir.toPath(), TEMP_PREFIX,
+                                        null).toFile();
+            try (InputStream in = Files.newInputStream(file.toPath());
+                 OutputStream out = new DeflaterOutputStream(
+                     Files.newOutputStream(temp.toPath()), deflater,
+                     COPY_SIZE)) {
+                byte[] buffer = new byte[COPY_SIZE];
+                for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                    md.update(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                }
+            }
+            id = Utils.toHex(md.digest());
+            if (contains(id)) {
+                temp.delete();
+            } else {
+                install(temp, id);
+            }
+            return id;
+        } catch (IOException excp) {
+            if (temp != null) {
+                temp.delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Store the serialized contents of OBJ, if not already present, and
+     *  return its id. */
+    String putObject(Serializable obj) {
+        return put(Utils.serialize(obj));
+    }
+
+    /** Return true iff the object with id ID is present. */
+    boolean contains(String id) {
+        if (file(id).isFile()) {
+            return true;
+        }
+        for (Pack pack : packs()) {
+            if (pack.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return a stream of the contents of the object with id ID, which
+     *  is read into memory only if it is stored in a pack as a delta.
+     *  Throws GitletException if there is no such object. */
+    InputStream open(String id) {
+        File file = file(id);
+        if (!file.isFile()) {
+            for (Pack pack : packs()) {
+                InputStream in = pack.open(id);
+                if (in != null) {
+                    return in;
+                }
+            }
+            throw Utils.error("No object with id %s exists.", id);
+        }
+        try {
+            return new InflaterInputStream(
+                new BufferedInputStream(Files.newInputStream(file.toPath()),
+                                        COPY_SIZE));
+        } catch (IOException excp) {
+            throw Utils.error("No object with id %s exists.", id);
+        }
+    }
+
+    /** Return the contents of the object with id ID.  Throws
+     *  GitletException if there is no such object. */
+    byte[] get(String id) {
+        byte[] deflated;
+        try {
+            deflated = Files.readAllBytes(file(id).toPath());
+        } catch (IOException excp) {
+            for (Pack pack : packs()) {
+                byte[] contents = pack.get(id);
+                if (contents != null) {
+                    return contents;
+                }
+            }
+            throw Utils.error("No object with id %s exists.", id);
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(deflated);
+            ByteArrayOutputStream out =
+                new ByteArrayOutputStream(INFLATION * deflated.length);
+            byte[] buffer = new byte[COPY_SIZE];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && !inflater.finished()
+                    && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("corrupt object "
+                                                       + id);
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException("corrupt object " + id);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Return the object with id ID, which was stored by putObject,
+     *  casting it to EXPECTEDCLASS.  Throws GitletException if there is
+     *  no such object. */
+    <T extends Serializable> T getObject(String id, Class<T> expectedClass) {
+        try (ObjectInputStream in = new ObjectInputStream(open(id))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the ids of the stored objects that begin with PREFIX, which
+     *  must have at least FANOUT_DIGITS digits.  Only one subdirectory is
+     *  listed. */
+    List<String> expand(String prefix) {
+        TreeSet<String> result = new TreeSet<>();
+        if (prefix.length() < FANOUT_DIGITS) {
+            return new ArrayList<>(result);
+        }
+        String fanout = prefix.substring(0, FANOUT_DIGITS),
+            rest = prefix.substring(FANOUT_DIGITS);
+        List<String> names = Utils.plainFilenamesIn(new File(_dir, fanout));
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(rest) && isId(fanout + name)) {
+                    result.add(fanout + name);
+                }
+            }
+        }
+        for (Pack pack : packs()) {
+            result.addAll(pack.expand(prefix));
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Move all my objects into new packs, replacing any existing
+     *  packs, and delete their loose copies.  Returns the number of
+     *  objects packed and the number of those stored as deltas. */
+    int[] repack() {
+        return repack(Pack.MAX_SIZE);
+    }
+
+    /** As for repack(), but starting a new pack whenever one would
+     *  exceed LIMIT bytes.  Each pack is named by the hash of the ids of
+     *  its objects. */
+    int[] repack(long limit) {
+        TreeSet<String> ids = new TreeSet<>(looseIds());
+        for (Pack pack : packs()) {
+            ids.addAll(pack.ids());
+        }
+        if (ids.isEmpty()) {
+            return new int[] { 0, 0 };
+        }
+        File dir = new File(_dir, PACK_DIR);
+        dir.mkdirs();
+        List<String> order = new ArrayList<>(ids);
+        HashSet<String> names = new HashSet<>();
+        int deltas = 0;
+        File tempPack = null, tempIndex = null;
+        try {
+            long[] sizes = Pack.order(order, this::open);
+            for (int start = 0; start < order.size(); ) {
+                tempPack = Files.createTempFile(dir.toPath(), TEMP_PREFIX,
+                                                null).toFile();
+                tempIndex = Files.createTempFile(dir.toPath(), TEMP_PREFIX,
+                                                 null).toFile();
+                int[] counts = Pack.write(order, sizes, start, this::open,
+                                          limit, tempPack, tempIndex);
+                String name = "pack-" + Utils.sha1(String.join(
+                    "", new TreeSet<>(order.subList(start,
+                                                    start + counts[0]))));
+                Files.move(tempPack.toPath(),
+                           new File(dir, name + PACK_SUFFIX).toPath(),
+                           StandardCopyOption.ATOMIC_MOVE);
+                Files.move(tempIndex.toPath(),
+                           new File(dir, name + INDEX_SUFFIX).toPath(),
+                           StandardCopyOption.ATOMIC_MOVE);
+                names.add(name);
+                start += counts[0];
+                deltas += counts[1];
+            }
+        } catch (IOException excp) {
+            if (tempPack != null) {
+                tempPack.delete();
+                tempIndex.delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+
+        for (File old : packFiles()) {
+            String name = old.getName();
+            int dot = name.lastIndexOf('.');
+            if (dot < 0 || !names.contains(name.substring(0, dot))) {
+                old.delete();
+            }
+        }
+        for (String id : looseIds()) {
+            file(id).delete();
+        }
+        File[] fanouts = _dir.listFiles();
+        if (fanouts != null) {
+            for (File fanout : fanouts) {
+                if (fanout.getName().length() == FANOUT_DIGITS) {
+                    fanout.delete();
+                }
+            }
+        }
+        _packs = null;
+        return new int[] { ids.size(), deltas };
+    }
+
+    /** Return the file holding the object with id ID. */
+    File file(String id) {
+        return Utils.join(_dir, id.substring(0, FANOUT_DIGITS),
+                          id.substring(FANOUT_DIGITS));
+    }
+
+    /** Write CONTENTS, deflated, as the object with id ID. */
+    private void write(String id, byte[] contents) {
+        File file = file(id);
+        File fanout = file.getParentFile();
+        if (!fanout.isDirectory()) {
+            fanout.mkdirs();
+        }
+        File temp = null;
+        Deflater deflater = new Deflater(COMPRESSION);
+        try {
+            temp = Files.createTempFile(fanout.toPath(), TEMP_PREFIX,
+                                        null).toFile();
+            try (OutputStream out = new DeflaterOutputStream(
+                     Files.newOutputStream(temp.toPath()), deflater,
+                     COPY_SIZE)) {
+                out.write(contents);
+            }
+            install(temp, id);
+        } catch (IOException excp) {
+            if (temp != null) {
+                temp.delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Rename the complete object file TEMP into place as the object with
+     *  id ID. */
+    private void install(File temp, String id) throws IOException {
+        File file = file(id);
+        file.getParentFile().mkdirs();
+        Files.move(temp.toPath(), file.toPath(),
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Return the ids of my loose (unpacked) objects. */
+    private List<String> looseIds() {
+        List<String> result = new ArrayList<>();
+        File[] fanouts = _dir.listFiles();
+        if (fanouts == null) {
+            return result;
+        }
+        for (File fanout : fanouts) {
+            List<String> names = Utils.plainFilenamesIn(fanout);
+            if (fanout.getName().length() != FANOUT_DIGITS || names == null) {
+                continue;
+            }
+            for (String name : names) {
+                if (isId(fanout.getName() + name)) {
+                    result.add(fanout.getName() + name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return my packs, opening those with complete indices if not
+     *  already open. */
+    private synchronized List<Pack> packs() {
+        if (_packs == null) {
+            _packs = new ArrayList<>();
+            for (File file : packFiles()) {
+                String name = file.getName();
+                if (name.endsWith(INDEX_SUFFIX)
+                    && !name.startsWith(TEMP_PREFIX)) {
+                    String base =
+                        name.substring(0, name.length()
+                                       - INDEX_SUFFIX.length());
+                    _packs.add(new Pack(new File(file.getParentFile(),
+                                                 base + PACK_SUFFIX),
+                                        file));
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /** Return the files in my pack directory. */
+    private List<File> packFiles() {
+        List<File> result = new ArrayList<>();
+        File dir = new File(_dir, PACK_DIR);
+        List<String> names = Utils.plainFilenamesIn(dir);
+        if (names != null) {
+            for (String name : names) {
+                result.add(new File(dir, name));
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff NAME has the form of a complete id. */
+    private static boolean isId(String name) {
+        return name.length() == Utils.UID_LENGTH
+            && name.chars().allMatch(c -> Character.digit(c, 16) >= 0);
+    }
+
+    /** Copy the rest of IN to OUT. */
+    static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[COPY_SIZE];
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+            out.write(buffer, 0, n);
+        }
+    }
+
+    /** Directory holding my objects. */
+    private final File _dir;
+    /** My packs, or null if not yet opened. */
+    private List<Pack> _packs;
+
+}
@@ -0,0 +1,565 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** A pack: many objects in a single file, with a sorted index.  Objects
+ *  similar to others are stored as deltas (see Delta) against them, in
+ *  chains at most MAX_DEPTH long.
+ *
+ *  The pack file holds PACK_MAGIC, VERSION, and the number of objects (as
+ *  ints), followed by the objects.  Each object is a kind byte (FULL or
+ *  DELTA), its size and the size of its stored form (ints), for a
+ *  DELTA the offset of its base in the pack (a long), and its stored
+ *  form: its contents or delta, deflated.  The index file holds
+ *  INDEX_MAGIC, VERSION, and the number of objects, then a fan-out table
+ *  of 256 ints giving the number of objects whose ids have each first
+ *  byte or less, then the ids (20 bytes each) in order, then the
+ *  offsets of the objects in the pack (longs), in the same order.
+ *
+ *  Both files are read through memory maps, so a pack is limited to
+ *  MAX_SIZE bytes; write stops before a pack would grow larger, so that
+ *  the rest of the objects go in further packs.  Recently used delta
+ *  bases are kept in a cache of up to CACHE_BYTES, so that delta chains
+ *  sharing a base do not rebuild it.
+ *  @author Tasman Kuang
+ */
+class Pack {
+
+    /** Identifies a pack file. */
+    static final int PACK_MAGIC = 0x474c504b;
+
+    /** Identifies a pack index file. */
+    static final int INDEX_MAGIC = 0x474c4958;
+
+    /** Version of the formats. */
+    static final int VERSION = 1;
+
+    /** Kinds of stored object. */
+    static final byte FULL = 1, DELTA = 2;
+
+    /** Longest chain of deltas. */
+    static final int MAX_DEPTH = 10;
+
+    /** Number of preceding objects tried as bases for each object. */
+    static final int WINDOW = 10;
+
+    /** Smallest object stored as a delta. */
+    static final int MIN_DELTA_SIZE = 64;
+
+    /** Most bytes of delta bases cached. */
+    static final long CACHE_BYTES = 16 << 20;
+
+    /** Largest object read into memory to be packed.  Larger objects are
+     *  streamed into the pack whole, without a search for deltas. */
+    static final long LARGE_SIZE = 16 << 20;
+
+    /** Largest pack file, whose offsets must fit in an int to be read
+     *  through a memory map. */
+    static final long MAX_SIZE = Integer.MAX_VALUE;
+
+    /** Size of the buffer used to stream large objects. */
+    private static final int COPY_SIZE = 1 << 16;
+
+    /** Number of bytes in a binary id. */
+    private static final int ID_BYTES = Utils.UID_LENGTH / 2;
+
+    /** Size of the pack and index headers. */
+    private static final int HEADER = 12;
+
+    /** Size of the index's fan-out table. */
+    private static final int FANOUT = 256 * 4;
+
+    /** The pack in PACKFILE with index INDEXFILE.  Throws
+     *  IllegalArgumentException if either is missing or malformed. */
+    Pack(File packFile, File indexFile) {
+        _pack = map(packFile);
+        _index = map(indexFile);
+        if (_pack.getInt(0) != PACK_MAGIC || _pack.getInt(4) != VERSION
+            || _index.getInt(0) != INDEX_MAGIC
+            || _index.getInt(4) != VERSION
+            || _pack.getInt(8) != _index.getInt(8)) {
+            throw new IllegalArgumentException("malformed pack");
+        }
+        _count = _index.getInt(8);
+    }
+
+    /** Return the number of objects in me. */
+    int size() {
+        return _count;
+    }
+
+    /** Return true iff I contain the object with id ID. */
+    boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    /** Return the contents of the object with id ID, or null if I do
+     *  not contain it. */
+    byte[] get(String id) {
+        int k = find(id);
+        return k < 0 ? null : read(offset(k), false);
+    }
+
+    /** Return a stream of the contents of the object with id ID, or null
+     *  if I do not contain it.  An object stored whole is inflated as it
+     *  is read, so that its size is not limited by the heap; one stored
+     *  as a delta (and so no larger than LARGE_SIZE) is rebuilt in
+     *  memory. */
+    InputStream open(String id) {
+        int k = find(id);
+        if (k < 0) {
+            return null;
+        }
+        int pos = (int) offset(k);
+        if (_pack.get(pos) != FULL) {
+            return new ByteArrayInputStream(read(pos, false));
+        }
+        ByteBuffer stored = _pack.duplicate();
+        stored.position(pos + 9).limit(pos + 9 + _pack.getInt(pos + 5));
+        return new InflaterInputStream(new BufferStream(stored.slice()));
+    }
+
+    /** Return the ids of all my objects, in order. */
+    List<String> ids() {
+        List<String> result = new ArrayList<>(_count);
+        for (int k = 0; k < _count; k += 1) {
+            result.add(id(k));
+        }
+        return result;
+    }
+
+    /** Return the ids of my objects that begin with PREFIX. */
+    List<String> expand(String prefix) {
+        List<String> result = new ArrayList<>();
+        if (prefix.length() < 2) {
+            return result;
+        }
+        int first = Integer.parseInt(prefix.substring(0, 2), 16);
+        for (int k = first == 0 ? 0 : fanout(first - 1); k < fanout(first);
+             k += 1) {
+            String id = id(k);
+            if (id.startsWith(prefix)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** Sort IDS into the order in which write stores them: in order of
+     *  their sketches (see Delta.sketch), which brings similar objects
+     *  together, and then largest first.  Each object is streamed once
+     *  from SOURCE, and only its sketch and size are kept.  Returns the
+     *  sizes of the objects, in their new order.  Sizes too large for
+     *  the sort key are ordered as if they were 4GB, but are returned
+     *  in full. */
+    static long[] order(List<String> ids, Function<String, InputStream> source)
+        throws IOException {
+        Map<String, Long> keys = new HashMap<>(), sizes = new HashMap<>();
+        byte[] buffer = new byte[COPY_SIZE];
+        for (String id : ids) {
+            Delta.Sketch sketch = new Delta.Sketch();
+            try (InputStream in = source.apply(id)) {
+                for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                    sketch.update(buffer, 0, n);
+                }
+            }
+            long size = sketch.size();
+            keys.put(id, (long) sketch.value() << 32
+                     | ~Math.min(size, 0xffffffffL) & 0xffffffffL);
+            sizes.put(id, size);
+        }
+        ids.sort(Comparator.comparing((String id) -> keys.get(id))
+                 .thenComparing(Comparator.naturalOrder()));
+        long[] result = new long[ids.size()];
+        for (int n = 0; n < result.length; n += 1) {
+            result[n] = sizes.get(ids.get(n));
+        }
+        return result;
+    }
+
+    /** Write objects from ORDER, whose sizes are SIZES, as a pack in
+     *  PACKFILE with index INDEXFILE, starting with the object at START
+     *  and stopping before the pack would exceed LIMIT bytes.  ORDER and
+     *  SIZES are as left and returned by order, and the contents of each
+     *  object are streamed from SOURCE.  An object of up to LARGE_SIZE
+     *  bytes is stored as a delta against whichever of the WINDOW objects
+     *  before it gives the smallest delta, if that is under half its size
+     *  and would not make a chain longer than MAX_DEPTH.  A larger object
+     *  is streamed into the pack whole, its stored size (like the number
+     *  of objects in the header) being filled in once the pack is
+     *  written.  Returns the number of objects
+     *  written and the number of those stored as deltas.  Throws
+     *  IOException if the object at START will not fit in LIMIT bytes. */
+    static int[] write(List<String> order, long[] sizes, int start,
+                       Function<String, InputStream> source, long limit,
+                       File packFile, File indexFile) throws IOException {
+        Map<String, Long> offsets = new HashMap<>();
+        Map<Long, Integer> patches = new HashMap<>();
+        int deltas = 0;
+        Deflater deflater = new Deflater();
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(
+                     packFile.toPath())))) {
+            out.writeInt(PACK_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(0);
+            long offset = HEADER;
+            Delta.Index[] window = new Delta.Index[WINDOW];
+            long[] windowOffsets = new long[WINDOW];
+            int[] windowDepths = new int[WINDOW];
+            for (int n = start; n < order.size(); n += 1) {
+                String id = order.get(n);
+                int slot = (n - start) % WINDOW;
+                if (sizes[n] > LARGE_SIZE) {
+                    if (offset + 9 + deflateBound(sizes[n]) > limit) {
+                        break;
+                    }
+                    offsets.put(id, offset);
+                    out.writeByte(FULL);
+                    out.writeInt((int) sizes[n]);
+                    out.writeInt(0);
+                    long stored;
+                    try (InputStream in = source.apply(id)) {
+                        stored = deflate(deflater, in, out);
+                    }
+                    patches.put(offset + 5, (int) stored);
+                    window[slot] = null;
+                    offset += 1 + 4 + 4 + stored;
+                    continue;
+                }
+                byte[] contents;
+                try (InputStream in = source.apply(id)) {
+                    contents = in.readAllBytes();
+                }
+                byte[] best = null;
+                int bestBase = -1;
+                if (contents.length >= MIN_DELTA_SIZE) {
+                    for (int w = 0; w < WINDOW; w += 1) {
+                        if (window[w] == null
+                            || windowDepths[w] >= MAX_DEPTH
+                            || window[w].base().length < contents.length / 2) {
+                            continue;
+                        }
+                        byte[] delta = Delta.create(window[w], contents);
+                        if (delta.length < contents.length / 2
+                            && (best == null || delta.length < best.length)) {
+                            best = delta;
+                            bestBase = w;
+                        }
+                    }
+                }
+                byte[] stored = deflate(deflater,
+                                        best == null ? contents : best);
+                long size = 1 + 4 + 4 + (best == null ? 0 : 8) + stored.length;
+                if (offset + size > limit) {
+                    break;
+                }
+                offsets.put(id, offset);
+                out.writeByte(best == null ? FULL : DELTA);
+                out.writeInt(contents.length);
+                out.writeInt(stored.length);
+                int depth = 0;
+                if (best != null) {
+                    out.writeLong(windowOffsets[bestBase]);
+                    depth = windowDepths[bestBase] + 1;
+                    deltas += 1;
+                }
+                out.write(stored);
+                window[slot] = new Delta.Index(contents);
+                windowOffsets[slot] = offset;
+                windowDepths[slot] = depth;
+                offset += size;
+            }
+        } finally {
+            deflater.end();
+        }
+        if (offsets.isEmpty() && start < order.size()) {
+            throw new IOException("object " + order.get(start)
+                                  + " is too large to pack");
+        }
+        patches.put(8L, offsets.size());
+        try (FileChannel channel = FileChannel.open(
+                 packFile.toPath(), StandardOpenOption.WRITE)) {
+            for (Map.Entry<Long, Integer> patch : patches.entrySet()) {
+                ByteBuffer value = ByteBuffer.allocate(4);
+                value.putInt(0, patch.getValue());
+                channel.write(value, patch.getKey());
+            }
+        }
+        writeIndex(offsets, indexFile);
+        return new int[] { offsets.size(), deltas };
+    }
+
+    /** Write an index of the objects whose offsets are given by OFFSETS
+     *  to INDEXFILE. */
+    private static void writeIndex(Map<String, Long> offsets,
+                                   File indexFile) throws IOException {
+        List<String> ids = new ArrayList<>(offsets.keySet());
+        Collections.sort(ids);
+        int[] fanout = new int[256];
+        for (String id : ids) {
+            fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(
+                     indexFile.toPath())))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ids.size());
+            int total = 0;
+            for (int count : fanout) {
+                total += count;
+                out.writeInt(total);
+            }
+            for (String id : ids) {
+                out.write(toBytes(id));
+            }
+            for (String id : ids) {
+                out.writeLong(offsets.get(id));
+            }
+        }
+    }
+
+    /** Return the index in my index file of the object with id ID, or -1
+     *  if there is none. */
+    private int find(String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        byte[] key = toBytes(id);
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : fanout(first - 1), hi = fanout(first) - 1;
+        byte[] probe = new byte[ID_BYTES];
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            idBytes(mid, probe);
+            int c = Arrays.compareUnsigned(probe, key);
+            if (c == 0) {
+                return mid;
+            } else if (c < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the contents of the object at OFFSET in the pack.  If
+     *  ASBASE, the object is the base of a delta, and is cached; the
+     *  result must then not be modified. */
+    private synchronized byte[] read(long offset, boolean asBase) {
+        byte[] cached = _cache.get(offset);
+        if (cached != null) {
+            return asBase ? cached : cached.clone();
+        }
+        int pos = (int) offset;
+        byte kind = _pack.get(pos);
+        int size = _pack.getInt(pos + 1), storedSize = _pack.getInt(pos + 5);
+        byte[] result;
+        if (kind == FULL) {
+            result = inflate(pos + 9, storedSize, size);
+        } else if (kind == DELTA) {
+            long base = _pack.getLong(pos + 9);
+            byte[] delta = inflate(pos + 17, storedSize, -1);
+            result = Delta.apply(read(base, true), delta);
+        } else {
+            throw new IllegalArgumentException("malformed pack");
+        }
+        if (asBase) {
+            _cache.put(offset, result);
+            _cachedBytes += result.length;
+            Iterator<byte[]> eldest = _cache.values().iterator();
+            while (_cachedBytes > CACHE_BYTES && _cache.size() > 1) {
+                _cachedBytes -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+        return result;
+    }
+
+    /** Return the STOREDSIZE bytes at POS in the pack, inflated.  SIZE is
+     *  the size of the result, or -1 if unknown. */
+    private byte[] inflate(int pos, int storedSize, int size) {
+        ByteBuffer input = _pack.duplicate();
+        input.position(pos).limit(pos + storedSize);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            byte[] result = new byte[size >= 0 ? size : 4 * storedSize];
+            int n = 0;
+            while (!inflater.finished()) {
+                if (n == result.length) {
+                    result = Arrays.copyOf(result, 2 * result.length + 1);
+                }
+                int k = inflater.inflate(result, n, result.length - n);
+                if (k == 0 && (inflater.needsInput()
+                               || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("malformed pack");
+                }
+                n += k;
+            }
+            return n == result.length ? result : Arrays.copyOf(result, n);
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException("malformed pack");
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Write the rest of IN to OUT, deflated by DEFLATER, without
+     *  closing OUT.  Returns the number of bytes written. */
+    private static long deflate(Deflater deflater, InputStream in,
+                                OutputStream out) throws IOException {
+        deflater.reset();
+        DeflaterOutputStream deflated =
+            new DeflaterOutputStream(out, deflater, COPY_SIZE);
+        byte[] buffer = new byte[COPY_SIZE];
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+            deflated.write(buffer, 0, n);
+        }
+        deflated.finish();
+        return deflater.getBytesWritten();
+    }
+
+    /** Return a bound on the size of SIZE bytes once deflated (as for
+     *  zlib's deflateBound). */
+    private static long deflateBound(long size) {
+        return size + (size >> 12) + (size >> 14) + (size >> 25) + 64;
+    }
+
+    /** Return CONTENTS, deflated by DEFLATER. */
+    private static byte[] deflate(Deflater deflater, byte[] contents) {
+        deflater.reset();
+        deflater.setInput(contents);
+        deflater.finish();
+        byte[] result = new byte[contents.length / 2 + 64];
+        int n = 0;
+        while (!deflater.finished()) {
+            if (n == result.length) {
+                result = Arrays.copyOf(result, 2 * result.length);
+            }
+            n += deflater.deflate(result, n, result.length - n);
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Return the number of objects whose ids have first byte FIRST or
+     *  less. */
+    private int fanout(int first) {
+        return _index.getInt(HEADER + 4 * first);
+    }
+
+    /** Store the binary id of the Kth object of the index in RESULT. */
+    private void idBytes(int k, byte[] result) {
+        ByteBuffer ids = _index.duplicate();
+        ids.position(HEADER + FANOUT + k * ID_BYTES);
+        ids.get(result);
+    }
+
+    /** Return the id of the Kth object of the index. */
+    private String id(int k) {
+        byte[] bytes = new byte[ID_BYTES];
+        idBytes(k, bytes);
+        StringBuilder result = new StringBuilder();
+        for (byte b : bytes) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+
+    /** Return the offset in the pack of the Kth object of the index. */
+    private long offset(int k) {
+        return _index.getLong(HEADER + FANOUT + _count * ID_BYTES + 8 * k);
+    }
+
+    /** Return the binary form of ID. */
+    private static byte[] toBytes(String id) {
+        byte[] result = new byte[ID_BYTES];
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            result[i] = (byte) Integer.parseInt(id.substring(2 * i,
+                                                             2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** Return a read-only map of FILE. */
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                                                    StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** A stream of the remaining bytes of a buffer. */
+    private static class BufferStream extends InputStream {
+        /** A stream of the bytes of BUFFER from its position to its
+         *  limit. */
+        BufferStream(ByteBuffer buffer) {
+            _buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return _buffer.hasRemaining() ? _buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] result, int start, int len) {
+            if (len == 0) {
+                return 0;
+            } else if (!_buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, _buffer.remaining());
+            _buffer.get(result, start, n);
+            return n;
+        }
+
+        /** The buffer read. */
+        private final ByteBuffer _buffer;
+    }
+
+    /** The pack file. */
+    private final MappedByteBuffer _pack;
+    /** The index file. */
+    private final MappedByteBuffer _index;
+    /** Number of objects. */
+    private final int _count;
+    /** Total size of the objects in _cache. */
+    private long _cachedBytes;
+    /** Recently used delta bases, by offset, least recently used
+     *  first. */
+    private final LinkedHashMap<Long, byte[]> _cache =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+}
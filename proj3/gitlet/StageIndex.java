@@ -0,0 +1,280 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** A cache, kept in a binary file, of the state of the files in a working
+ *  tree: for each file, by its path relative to the tree, its size,
+ *  modification time (in nanoseconds), and file key (a hash of the
+ *  inode number and device, where the file system has them) when it was
+ *  last hashed, and the id of its contents then.  A file whose size,
+ *  time, and key are unchanged is taken to be unchanged, and is not
+ *  hashed again.
+ *
+ *  A file changed within the resolution of the file system's clock just
+ *  before the index was saved may have the same time as when it was
+ *  hashed.  So, as in Git, an entry whose time is no earlier than that
+ *  of the index file itself is "racily clean", and is always hashed.
+ *
+ *  The index file begins with MAGIC, VERSION (a short), and the number
+ *  of entries (an int), followed by the entries in order of path: the
+ *  path (as for DataOutput.writeUTF), the size, time, and key (longs),
+ *  and the id (ID_BYTES bytes).  It is written to a temporary file that
+ *  is then renamed over the old one, so that a reader sees either the
+ *  old index or the new one.
+ *  @author Tasman Kuang
+ */
+class StageIndex {
+
+    /** Identifies an index file. */
+    static final int MAGIC = 0x474c5354;
+
+    /** Version of the index format. */
+    static final short VERSION = 1;
+
+    /** Number of bytes in a binary id. */
+    static final int ID_BYTES = Utils.UID_LENGTH / 2;
+
+    /** Size of the buffers used to read and write the index file. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** An index kept in FILE, read from FILE if it exists.  A missing or
+     *  unreadable index is treated as empty. */
+    StageIndex(File file) {
+        _file = file;
+        read();
+    }
+
+    /** Return the id of the contents of the file PATH under directory
+     *  ROOT, hashing it only if it has changed since it was last hashed,
+     *  or null if there is no such plain file (in which case its entry is
+     *  removed).  Throws IllegalArgumentException in case of problems. */
+    String hash(File root, String path) {
+        return update(root, path, null);
+    }
+
+    /** Store the contents of the file PATH under directory ROOT in
+     *  OBJECTS and return their id, or return null if there is no such
+     *  plain file.  As for hash, an unchanged file is not read again, if
+     *  OBJECTS already contains its contents. */
+    String add(File root, String path, ObjectStore objects) {
+        return update(root, path, objects);
+    }
+
+    /** Return the id recorded for PATH, or null if there is none.  The
+     *  file need not be unchanged. */
+    String id(String path) {
+        Entry entry = _entries.get(path);
+        return entry == null ? null : Utils.toHex(entry._id);
+    }
+
+    /** Remove the entry for PATH, if any. */
+    void remove(String path) {
+        if (_entries.remove(path) != null) {
+            _changed = true;
+        }
+    }
+
+    /** Return the paths of my entries, in order. */
+    List<String> paths() {
+        List<String> result = new ArrayList<>(_entries.keySet());
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Return the number of my entries. */
+    int size() {
+        return _entries.size();
+    }
+
+    /** Return the number of files hashed (by hash, add, or otherwise, as
+     *  reported to record) since I was read. */
+    int hashed() {
+        return _hashed;
+    }
+
+    /** Write me to my file, if I have changed since I was read. */
+    void save() {
+        if (!_changed) {
+            return;
+        }
+        File dir = _file.getAbsoluteFile().getParentFile(), temp = null;
+        try {
+            temp = Files.createTempFile(dir.toPath(), ObjectStore.TEMP_PREFIX,
+                                        null).toFile();
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(
+                         Files.newOutputStream(temp.toPath()),
+                         BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeInt(_entries.size());
+                for (String path : paths()) {
+                    Entry entry = _entries.get(path);
+                    out.writeUTF(path);
+                    out.writeLong(entry._size);
+                    out.writeLong(entry._time);
+                    out.writeLong(entry._key);
+                    out.write(entry._id);
+                }
+            }
+            Files.move(temp.toPath(), _file.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+            _stamp = time(Files.readAttributes(_file.toPath(),
+                                               BasicFileAttributes.class));
+        } catch (IOException excp) {
+            if (temp != null) {
+                temp.delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _changed = false;
+    }
+
+    /** Return the id of the file PATH under ROOT, as for hash if OBJECTS
+     *  is null and as for add otherwise. */
+    private String update(File root, String path, ObjectStore objects) {
+        File file = new File(root, path);
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file.toPath(),
+                                         BasicFileAttributes.class);
+        } catch (NoSuchFileException excp) {
+            attrs = null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (attrs == null || !attrs.isRegularFile()) {
+            remove(path);
+            return null;
+        }
+        String id = lookup(path, attrs);
+        if (id != null && (objects == null || objects.contains(id))) {
+            return id;
+        }
+        id = objects == null ? Utils.sha1(file) : objects.putFile(file);
+        record(path, attrs, id);
+        return id;
+    }
+
+    /** Return the id recorded for PATH if the file it names, whose
+     *  attributes are ATTRS, is unchanged since it was hashed, and
+     *  otherwise null.  Does not modify me, so may be called from several
+     *  threads at once, provided that no other method is. */
+    String lookup(String path, BasicFileAttributes attrs) {
+        Entry entry = _entries.get(path);
+        long time = time(attrs);
+        if (entry != null && entry._size == attrs.size()
+            && entry._time == time && entry._key == key(attrs)
+            && time < _stamp) {
+            return Utils.toHex(entry._id);
+        }
+        return null;
+    }
+
+    /** Record that the file PATH, whose attributes were ATTRS, has just
+     *  been hashed, and that its contents have id ID. */
+    void record(String path, BasicFileAttributes attrs, String id) {
+        _hashed += 1;
+        _entries.put(path, new Entry(attrs.size(), time(attrs), key(attrs),
+                                     fromHex(id)));
+        _changed = true;
+    }
+
+    /** Read my entries from my file, if it exists and is well formed. */
+    private void read() {
+        _entries.clear();
+        _changed = false;
+        _stamp = Long.MIN_VALUE;
+        if (!_file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(Files.newInputStream(_file.toPath()),
+                                         BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                throw new IOException("not an index");
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String path = in.readUTF();
+                long size = in.readLong(), time = in.readLong(),
+                    key = in.readLong();
+                byte[] id = new byte[ID_BYTES];
+                in.readFully(id);
+                _entries.put(path, new Entry(size, time, key, id));
+            }
+            _stamp = time(Files.readAttributes(_file.toPath(),
+                                               BasicFileAttributes.class));
+        } catch (IOException excp) {
+            _entries.clear();
+        }
+    }
+
+    /** Return the modification time of a file with attributes ATTRS, in
+     *  nanoseconds. */
+    private static long time(BasicFileAttributes attrs) {
+        return attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    /** Return a number identifying the file with attributes ATTRS, or 0
+     *  if the file system does not provide one. */
+    private static long key(BasicFileAttributes attrs) {
+        Object key = attrs.fileKey();
+        return key == null ? 0 : key.hashCode();
+    }
+
+    /** Return the binary form of the hexadecimal id ID. */
+    private static byte[] fromHex(String id) {
+        byte[] result = new byte[ID_BYTES];
+        for (int k = 0; k < ID_BYTES; k += 1) {
+            result[k] = (byte) (Character.digit(id.charAt(2 * k), 16) << 4
+                                | Character.digit(id.charAt(2 * k + 1), 16));
+        }
+        return result;
+    }
+
+    /** The recorded state of one file. */
+    private static class Entry {
+        /** The state of a file with size SIZE, time TIME, and key KEY,
+         *  whose contents have the binary id ID. */
+        Entry(long size, long time, long key, byte[] id) {
+            _size = size;
+            _time = time;
+            _key = key;
+            _id = id;
+        }
+
+        /** Size, modification time, and key of the file. */
+        private final long _size, _time, _key;
+        /** Binary id of the file's contents. */
+        private final byte[] _id;
+    }
+
+    /** The file holding me. */
+    private final File _file;
+    /** My entries, by path.  Kept unordered, since they are looked up
+     *  far more often than listed. */
+    private final HashMap<String, Entry> _entries = new HashMap<>();
+    /** Modification time of _file when last read or written, in
+     *  nanoseconds.  Entries no older than this are racily clean. */
+    private long _stamp;
+    /** True iff I have changed since last read or written. */
+    private boolean _changed;
+    /** Number of files hashed since I was read. */
+    private int _hashed;
+
+}
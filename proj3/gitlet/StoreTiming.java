@@ -0,0 +1,361 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+/** Compares the fan-out, compressed ObjectStore against a flat directory
+ *  of uncompressed objects (the layout written by Utils.writeContents).
+ *  Usage:
+ *      java gitlet.StoreTiming [ FILES [ SIZE [ LARGE ] ] ]
+ *  makes a synthetic working tree of FILES files (default DEFAULT_FILES)
+ *  of about SIZE bytes (default DEFAULT_SIZE) of text in nested
+ *  directories, and then, for each kind of store, times adding each file
+ *  (hashing and storing its contents), committing (storing the map from
+ *  file names to blob ids), and checking out (reading each blob back by
+ *  way of the map and writing it to its file), and reports the space the
+ *  store uses.  It then adds REVISIONS revisions of the tree, each
+ *  editing a line in every tenth file, to the fan-out store, and times
+ *  reading every object back before and after repacking the store (see
+ *  ObjectStore.repack), reporting the space used by each.  Finally, if
+ *  LARGE is given, it makes a file of LARGE megabytes and times hashing
+ *  it (Utils.sha1(File)) and storing it (ObjectStore.putFile), reporting
+ *  the most heap used meanwhile, which should not grow with LARGE.
+ *  Everything is made in a temporary directory, which is deleted
+ *  afterward.
+ *  @author Tasman Kuang
+ */
+class StoreTiming {
+
+    /** Default number of files in the tree. */
+    static final int DEFAULT_FILES = 20000;
+
+    /** Default size of each file, in bytes. */
+    static final int DEFAULT_SIZE = 4096;
+
+    /** Number of files per directory of the tree. */
+    static final int FILES_PER_DIR = 100;
+
+    /** Number of revisions of the tree added before repacking. */
+    static final int REVISIONS = 5;
+
+    /** Fraction of the files edited by each revision is 1 in
+     *  EDIT_INTERVAL. */
+    static final int EDIT_INTERVAL = 10;
+
+    /** Bytes in a megabyte, and lines per megabyte of a large file. */
+    static final int MEGABYTE = 1 << 20, LINES_PER_MEGABYTE = 1 << 14;
+
+    /** Random seed, for reproducible trees. */
+    static final long SEED = 61;
+
+    /** Time the two stores on the tree described by ARGS. */
+    public static void main(String... args) throws IOException {
+        int files = args.length > 0 ? Integer.parseInt(args[0])
+            : DEFAULT_FILES;
+        int size = args.length > 1 ? Integer.parseInt(args[1])
+            : DEFAULT_SIZE;
+        File root = Files.createTempDirectory("gitlet-timing").toFile();
+        try {
+            File tree = new File(root, "tree");
+            List<String> names = makeTree(tree, files, size);
+            time("flat", new FlatStore(new File(root, "flat")), tree, names);
+            ObjectStore objects = new ObjectStore(new File(root, "fanout"));
+            time("fan-out", new Store(objects), tree, names);
+            timePack(objects, tree, names);
+            if (args.length > 2) {
+                timeLarge(objects, new File(root, "large"),
+                          Integer.parseInt(args[2]));
+            }
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** Make FILES files of about SIZE bytes under directory TREE, and
+     *  return their names relative to TREE. */
+    static List<String> makeTree(File tree, int files, int size) {
+        Random random = new Random(SEED);
+        String[] words = {
+            "gitlet", "commit", "blob", "tree", "branch", "merge", "the",
+            "of", "and", "a", "to", "in", "is", "head", "stage", "log",
+        };
+        List<String> names = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < files; i += 1) {
+            String name = String.format("d%03d/d%03d/f%06d.txt",
+                                        i / (FILES_PER_DIR * FILES_PER_DIR),
+                                        i / FILES_PER_DIR % FILES_PER_DIR,
+                                        i);
+            text.setLength(0);
+            while (text.length() < size) {
+                text.append(words[random.nextInt(words.length)])
+                    .append(random.nextInt(8) == 0 ? '\n' : ' ');
+            }
+            File file = new File(tree, name);
+            file.getParentFile().mkdirs();
+            Utils.writeContents(file, text.toString());
+            names.add(name);
+        }
+        return names;
+    }
+
+    /** Print the time STORE, named KIND, takes to add, commit, and check
+     *  out the files NAMES under TREE, and the space it then uses. */
+    static void time(String kind, Store store, File tree, List<String> names) {
+        long start = System.nanoTime();
+        TreeMap<String, String> blobs = new TreeMap<>();
+        for (String name : names) {
+            blobs.put(name,
+                      store.put(Utils.readContents(new File(tree, name))));
+        }
+        long added = System.nanoTime();
+        String commit = store.putObject(blobs);
+        long committed = System.nanoTime();
+        @SuppressWarnings("unchecked")
+        TreeMap<String, String> checkout =
+            store.getObject(commit, TreeMap.class);
+        for (String name : checkout.keySet()) {
+            Utils.writeContents(new File(tree, name),
+                                store.get(checkout.get(name)));
+        }
+        long checkedOut = System.nanoTime();
+        System.out.printf("%s: add %.2f sec., commit %.3f sec., "
+                          + "checkout %.2f sec., %d files, %.1f MB%n",
+                          kind, (added - start) * 1e-9,
+                          (committed - added) * 1e-9,
+                          (checkedOut - committed) * 1e-9,
+                          count(store.dir()), size(store.dir()) / 1e6);
+    }
+
+    /** Add REVISIONS revisions of the files NAMES under TREE to OBJECTS,
+     *  and print the time taken to read back all its objects before and
+     *  after repacking it, the time taken to repack, and the space used
+     *  before and after. */
+    static void timePack(ObjectStore objects, File tree, List<String> names) {
+        Random random = new Random(SEED);
+        List<String> ids = new ArrayList<>();
+        for (int r = 0; r < REVISIONS; r += 1) {
+            for (int i = r % EDIT_INTERVAL; i < names.size();
+                 i += EDIT_INTERVAL) {
+                File file = new File(tree, names.get(i));
+                String text = Utils.readContentsAsString(file);
+                int at = text.indexOf('\n', random.nextInt(text.length()));
+                text = text.substring(0, at + 1) + "revision " + r + "\n"
+                    + text.substring(at + 1);
+                Utils.writeContents(file, text);
+            }
+            for (String name : names) {
+                ids.add(objects.put(Utils.readContents(new File(tree,
+                                                                name))));
+            }
+        }
+        long looseSize = size(objects.dir());
+        double looseRead = readAll(objects, ids);
+        long start = System.nanoTime();
+        int[] counts = objects.repack();
+        double repack = (System.nanoTime() - start) * 1e-9;
+        double packedRead = readAll(objects, ids);
+        System.out.printf("history: %d objects (%d as deltas), "
+                          + "%.1f MB loose, %.1f MB packed; "
+                          + "repack %.2f sec., "
+                          + "read %.2f sec. loose, %.2f sec. packed%n",
+                          counts[0], counts[1], looseSize / 1e6,
+                          size(objects.dir()) / 1e6, repack, looseRead,
+                          packedRead);
+    }
+
+    /** Make FILE, of MEGABYTES megabytes of text, and print the time
+     *  taken to hash it and to store it in OBJECTS, and the peak heap
+     *  use during each. */
+    static void timeLarge(ObjectStore objects, File file, int megabytes)
+        throws IOException {
+        byte[] line = new byte[MEGABYTE / LINES_PER_MEGABYTE];
+        Arrays.fill(line, (byte) 'x');
+        line[line.length - 1] = '\n';
+        try (OutputStream out = new FileOutputStream(file)) {
+            for (int k = 0; k < megabytes * LINES_PER_MEGABYTE; k += 1) {
+                byte[] number = Integer.toString(k).getBytes();
+                System.arraycopy(number, 0, line, 0, number.length);
+                out.write(line);
+            }
+        }
+        resetPeakHeap();
+        long start = System.nanoTime();
+        String id = Utils.sha1(file);
+        double hash = (System.nanoTime() - start) * 1e-9;
+        long hashHeap = peakHeap();
+        resetPeakHeap();
+        start = System.nanoTime();
+        if (!id.equals(objects.putFile(file))) {
+            throw new IllegalStateException("putFile and sha1 disagree");
+        }
+        double put = (System.nanoTime() - start) * 1e-9;
+        System.out.printf("large: %d MB; hash %.2f sec. (%.0f MB/sec.), "
+                          + "peak heap %.1f MB; store %.2f sec., "
+                          + "peak heap %.1f MB%n",
+                          megabytes, hash, megabytes / hash, hashHeap / 1e6,
+                          put, peakHeap() / 1e6);
+    }
+
+    /** Collect garbage and reset the peak usage of the heap's memory
+     *  pools. */
+    static void resetPeakHeap() {
+        System.gc();
+        for (MemoryPoolMXBean pool
+                 : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /** Return the sum of the peak usage of the heap's memory pools since
+     *  the last resetPeakHeap. */
+    static long peakHeap() {
+        long total = 0;
+        for (MemoryPoolMXBean pool
+                 : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                total += pool.getPeakUsage().getUsed();
+            }
+        }
+        return total;
+    }
+
+    /** Return the time in seconds taken to read the objects IDS from
+     *  OBJECTS. */
+    static double readAll(ObjectStore objects, List<String> ids) {
+        long start = System.nanoTime();
+        for (String id : ids) {
+            objects.get(id);
+        }
+        return (System.nanoTime() - start) * 1e-9;
+    }
+
+    /** Return the number of plain files under FILE. */
+    static long count(File file) {
+        File[] files = file.listFiles();
+        if (files == null) {
+            return 1;
+        }
+        long n = 0;
+        for (File f : files) {
+            n += count(f);
+        }
+        return n;
+    }
+
+    /** Return the total size of the plain files under FILE. */
+    static long size(File file) {
+        File[] files = file.listFiles();
+        if (files == null) {
+            return file.length();
+        }
+        long n = 0;
+        for (File f : files) {
+            n += size(f);
+        }
+        return n;
+    }
+
+    /** Delete FILE and everything under it. */
+    static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                delete(f);
+            }
+        }
+        file.delete();
+    }
+
+    /** The operations timed, as implemented by an ObjectStore. */
+    static class Store {
+        /** A Store using OBJECTS. */
+        Store(ObjectStore objects) {
+            _objects = objects;
+        }
+
+        /** Return the directory holding my objects. */
+        File dir() {
+            return _objects.dir();
+        }
+
+        /** Store CONTENTS and return its id. */
+        String put(byte[] contents) {
+            return _objects.put(contents);
+        }
+
+        /** Store the serialized OBJ and return its id. */
+        String putObject(Serializable obj) {
+            return put(Utils.serialize(obj));
+        }
+
+        /** Return the contents of the object ID. */
+        byte[] get(String id) {
+            return _objects.get(id);
+        }
+
+        /** Return the object ID, stored by putObject, as an instance of
+         *  EXPECTEDCLASS. */
+        <T extends Serializable> T getObject(String id,
+                                                     Class<T> expectedClass) {
+            return _objects.getObject(id, expectedClass);
+        }
+
+        /** The store timed. */
+        private final ObjectStore _objects;
+    }
+
+    /** A flat directory of uncompressed objects, each named by its id. */
+    static class FlatStore extends Store {
+        /** A FlatStore in DIR. */
+        FlatStore(File dir) {
+            super(null);
+            _dir = dir;
+            _dir.mkdirs();
+        }
+
+        @Override
+        File dir() {
+            return _dir;
+        }
+
+        @Override
+        String put(byte[] contents) {
+            String id = Utils.sha1(contents);
+            File file = new File(_dir, id);
+            if (!file.exists()) {
+                Utils.writeContents(file, contents);
+            }
+            return id;
+        }
+
+        @Override
+        byte[] get(String id) {
+            return Utils.readContents(new File(_dir, id));
+        }
+
+        @Override
+        <T extends Serializable> T getObject(String id,
+                                                     Class<T> expectedClass) {
+            return Utils.readObject(new File(_dir, id), expectedClass);
+        }
+
+        /** Directory holding my objects. */
+        private final File _dir;
+    }
+
+}
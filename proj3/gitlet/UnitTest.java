@@ -1,6 +1,17 @@
 package gitlet;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
 import ucb.junit.textui;
+import org.junit.After;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -15,11 +26,245 @@ public class UnitTest {
         System.exit(textui.runClasses(UnitTest.class));
     }
 
+    /** Delete the temporary directories made by the last test. */
+    @After
+    public void deleteTempDirs() {
+        for (File dir : _tempDirs) {
+            StoreTiming.delete(dir);
+        }
+        _tempDirs.clear();
+    }
+
     /** A dummy test to avoid complaint. */
     @Test
     public void placeholderTest() {
     }
 
-}
+    /** Test that objects stored in an ObjectStore read back intact, by id
+     *  or abbreviated id. */
+    @Test
+    public void objectStoreTest() throws IOException {
+        File dir = tempDir();
+        ObjectStore store = new ObjectStore(dir);
+        byte[] contents = "hello, gitlet\n".getBytes(StandardCharsets.UTF_8);
+        String id = store.put(contents);
+        assertEquals(Utils.sha1(contents), id);
+        assertTrue(store.contains(id));
+        assertEquals(id, store.put(contents));
+        assertArrayEquals(contents, store.get(id));
+        assertTrue(new File(dir, id.substring(0, 2)).isDirectory());
+        assertEquals(Arrays.asList(id), store.expand(id.substring(0, 8)));
+
+        TreeMap<String, String> tree = new TreeMap<>();
+        tree.put("wug.txt", id);
+        String treeId = store.putObject(tree);
+        assertEquals(tree, store.getObject(treeId, TreeMap.class));
+        assertFalse(store.contains(Utils.sha1("absent")));
+    }
+
+    /** Test that files are hashed and stored as if read whole, whether
+     *  small or large enough to be memory-mapped. */
+    @Test
+    public void putFileTest() throws IOException {
+        File dir = tempDir();
+        ObjectStore store = new ObjectStore(new File(dir, "objects"));
+        for (int size : new int[] { 0, 1000, (int) Utils.MAP_THRESHOLD + 7 }) {
+            byte[] contents = new byte[size];
+            for (int k = 0; k < size; k += 1) {
+                contents[k] = (byte) (k * 7 + k / 1000);
+            }
+            File file = new File(dir, "file" + size);
+            Utils.writeContents(file, contents);
+            String id = Utils.sha1(contents);
+            assertEquals(id, Utils.sha1(file));
+            assertEquals(id, store.putFile(file));
+            assertEquals(id, store.putFile(file));
+            assertArrayEquals(contents, store.get(id));
+        }
+    }
+
+    /** Test that a StageIndex hashes only files that have changed since
+     *  it was saved. */
+    @Test
+    public void stageIndexTest() throws IOException {
+        File dir = tempDir();
+        File file = new File(dir, "wug.txt"), index = new File(dir, "index");
+        long past = System.currentTimeMillis() - 10000;
+        Utils.writeContents(file, "wug\n");
+        file.setLastModified(past);
+        StageIndex stage = new StageIndex(index);
+        assertEquals(Utils.sha1("wug\n"), stage.hash(dir, "wug.txt"));
+        assertEquals(1, stage.hashed());
+        stage.save();
+
+        stage = new StageIndex(index);
+        assertEquals(Arrays.asList("wug.txt"), stage.paths());
+        assertEquals(Utils.sha1("wug\n"), stage.hash(dir, "wug.txt"));
+        assertEquals(0, stage.hashed());
+        Utils.writeContents(file, "wugs\n");
+        file.setLastModified(past);
+        assertEquals(Utils.sha1("wugs\n"), stage.hash(dir, "wug.txt"));
+        assertEquals(1, stage.hashed());
+        file.delete();
+        assertNull(stage.hash(dir, "wug.txt"));
+        assertEquals(0, stage.size());
+        stage.save();
+        assertEquals(0, new StageIndex(index).size());
+    }
+
+    /** Test that a WorkTree finds the same ids in the same order with
+     *  any number of threads, in nested directories and in one holding
+     *  more files than one task hashes, skipping .gitlet, symbolic
+     *  links, and unchanged files. */
+    @Test
+    public void workTreeTest() throws IOException {
+        File dir = tempDir();
+        TreeMap<String, String> expected = new TreeMap<>();
+        for (int i = 0; i < 50; i += 1) {
+            String path = String.format("d%d/e%d/f%02d.txt", i % 3, i % 2, i);
+            File file = new File(dir, path);
+            file.getParentFile().mkdirs();
+            Utils.writeContents(file, "file " + i + "\n");
+            file.setLastModified(System.currentTimeMillis() - 10000);
+            expected.put(path, Utils.sha1("file " + i + "\n"));
+        }
+        for (int i = 0; i < 3 * WorkTree.BATCH_SIZE; i += 1) {
+            String path = String.format("g%02d.txt", i);
+            Utils.writeContents(new File(dir, path), "flat " + i + "\n");
+            new File(dir, path).setLastModified(System.currentTimeMillis()
+                                                - 10000);
+            expected.put(path, Utils.sha1("flat " + i + "\n"));
+        }
+        Files.createSymbolicLink(new File(dir, "d0/loop").toPath(),
+                                 dir.toPath());
+        new File(dir, ".gitlet").mkdir();
+        Utils.writeContents(new File(dir, ".gitlet/HEAD"), "master");
 
+        File index = new File(dir, ".gitlet/index");
+        for (int threads : new int[] { 1, 4 }) {
+            WorkTree work = new WorkTree(dir, threads, 2);
+            assertEquals(new ArrayList<>(expected.keySet()), work.files());
+            index.delete();
+            StageIndex stage = new StageIndex(index);
+            assertEquals(expected, work.hash(stage));
+            assertEquals(expected.size(), work.hashed());
+            stage.save();
+            assertEquals(expected, work.hash(new StageIndex(index)));
+            assertEquals(0, work.hashed());
+        }
+    }
+
+    /** Test that a delta reproduces its target, and is small when the
+     *  target is a small edit of the base. */
+    @Test
+    public void deltaTest() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i += 1) {
+            text.append("line ").append(i).append(" of the base\n");
+        }
+        byte[] base = text.toString().getBytes(StandardCharsets.UTF_8);
+        text.insert(text.length() / 2, "an inserted line\n");
+        byte[] target = text.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] delta = Delta.create(base, target);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        assertTrue(delta.length < 64);
+        byte[] empty = new byte[0];
+        assertArrayEquals(base, Delta.apply(empty, Delta.create(empty, base)));
+    }
+
+    /** Test that objects read back intact after repacking, including
+     *  those stored as deltas. */
+    @Test
+    public void packTest() throws IOException {
+        File dir = tempDir();
+        ObjectStore store = new ObjectStore(dir);
+        List<byte[]> versions = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i += 1) {
+            text.append("line ").append(i).append(" of the file\n");
+        }
+        for (int r = 0; r < 3; r += 1) {
+            text.append("revision ").append(r).append("\n");
+            versions.add(text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        versions.add("small\n".getBytes(StandardCharsets.UTF_8));
+        List<String> ids = new ArrayList<>();
+        for (byte[] contents : versions) {
+            ids.add(store.put(contents));
+        }
+        int[] counts = store.repack();
+        assertEquals(versions.size(), counts[0]);
+        assertTrue(counts[1] >= 2);
+        assertFalse(store.file(ids.get(0)).exists());
+
+        store = new ObjectStore(dir);
+        for (int k = 0; k < ids.size(); k += 1) {
+            assertTrue(store.contains(ids.get(k)));
+            assertArrayEquals(versions.get(k), store.get(ids.get(k)));
+        }
+        assertEquals(Arrays.asList(ids.get(0)),
+                     store.expand(ids.get(0).substring(0, 6)));
+        String extra = store.put("loose\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(versions.size() + 1, store.repack()[0]);
+        assertArrayEquals(versions.get(2), store.get(ids.get(2)));
+        assertTrue(store.contains(extra));
+    }
 
+    /** Test that repacking starts a new pack when one would exceed its
+     *  limit, and streams large objects into a pack whole. */
+    @Test
+    public void packLimitTest() throws IOException {
+        File dir = tempDir();
+        ObjectStore store = new ObjectStore(dir);
+        List<byte[]> objects = new ArrayList<>();
+        for (int i = 0; i < 20; i += 1) {
+            StringBuilder text = new StringBuilder();
+            for (int k = 0; k < 40; k += 1) {
+                text.append("object ").append(i * k).append("\n");
+            }
+            objects.add(text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] large = new byte[(int) Pack.LARGE_SIZE + 1];
+        for (int k = 0; k < large.length; k += 1) {
+            large[k] = (byte) (k % 251 + k / 4096);
+        }
+        List<String> ids = new ArrayList<>();
+        for (byte[] contents : objects) {
+            ids.add(store.put(contents));
+        }
+        assertEquals(objects.size(), store.repack(2000)[0]);
+        File packDir = new File(dir, ObjectStore.PACK_DIR);
+        assertTrue(packDir.list((d, name) -> name.endsWith(
+            ObjectStore.INDEX_SUFFIX)).length > 1);
+        try {
+            store.repack(100);
+            fail("repacked into packs too small for an object");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+
+        objects.add(large);
+        ids.add(store.put(large));
+        assertEquals(objects.size(), store.repack()[0]);
+        assertEquals(2, packDir.list().length);
+        store = new ObjectStore(dir);
+        for (int k = 0; k < ids.size(); k += 1) {
+            assertArrayEquals(objects.get(k), store.get(ids.get(k)));
+            try (InputStream in = store.open(ids.get(k))) {
+                assertArrayEquals(objects.get(k), in.readAllBytes());
+            }
+        }
+    }
+
+    /** Return a new temporary directory, which is deleted after the
+     *  test. */
+    private File tempDir() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-test").toFile();
+        _tempDirs.add(dir);
+        return dir;
+    }
+
+    /** Temporary directories made by the current test. */
+    private final List<File> _tempDirs = new ArrayList<>();
+
+}
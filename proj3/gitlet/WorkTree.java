@@ -0,0 +1,309 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+
+/** A walker of the plain files of a working tree (skipping the .gitlet
+ *  directory), which finds the ids of their contents in parallel.
+ *  Directories are listed, and files examined, by tasks on a fork-join
+ *  pool, one task per directory.  A file that a StageIndex shows to be
+ *  unchanged is not read; the others are hashed (or stored) by further
+ *  tasks of up to BATCH_SIZE files each, so that even a single flat
+ *  directory is hashed in parallel, with at most a fixed number of
+ *  files being read at once, so that parallelism does not make the disk
+ *  thrash.  Symbolic links are skipped, so a link to an enclosing
+ *  directory does not make the walk loop.  Results are collected into
+ *  a map ordered by path, so that output does not depend on the order
+ *  in which the tasks finish.  Paths are relative to the tree, with
+ *  '/' as separator.
+ *  @author Tasman Kuang
+ */
+class WorkTree {
+
+    /** Name of the repository directory, which is not walked. */
+    static final String REPO_NAME = ".gitlet";
+
+    /** Default number of files read at once. */
+    static final int DEFAULT_IO_LIMIT = 8;
+
+    /** Most files hashed by one task. */
+    static final int BATCH_SIZE = 16;
+
+    /** A walker of the tree rooted at ROOT using THREADS threads, reading
+     *  at most IOLIMIT files at once. */
+    WorkTree(File root, int threads, int ioLimit) {
+        assert threads > 0 && ioLimit > 0;
+        _root = root;
+        _threads = threads;
+        _ioLimit = ioLimit;
+    }
+
+    /** A walker of the tree rooted at ROOT, using as many threads as there
+     *  are processors and reading at most DEFAULT_IO_LIMIT files at
+     *  once. */
+    WorkTree(File root) {
+        this(root, Runtime.getRuntime().availableProcessors(),
+             DEFAULT_IO_LIMIT);
+    }
+
+    /** Return the paths of all plain files in my tree, in order. */
+    List<String> files() {
+        return new ArrayList<>(walk(null, null, false).keySet());
+    }
+
+    /** Return a map from the path of each plain file in my tree to the id
+     *  of its contents, hashing only those files that INDEX does not show
+     *  to be unchanged, and recording them in INDEX.  Entries of INDEX for
+     *  files that no longer exist are removed.  INDEX is not saved. */
+    TreeMap<String, String> hash(StageIndex index) {
+        return walk(index, null, true);
+    }
+
+    /** As for hash, but also store the contents of each file in OBJECTS
+     *  (as for "add ."), returning the same map. */
+    TreeMap<String, String> add(StageIndex index, ObjectStore objects) {
+        return walk(index, objects, true);
+    }
+
+    /** Return the number of files read by the last call of hash or
+     *  add. */
+    int hashed() {
+        return _hashed;
+    }
+
+    /** Walk my tree, returning a map from each plain file's path to the id
+     *  of its contents if HASH, and to null otherwise.  If HASH, files
+     *  that INDEX (if not null) does not show to be unchanged are hashed,
+     *  and stored in OBJECTS if it is not null, and recorded in INDEX. */
+    private TreeMap<String, String> walk(StageIndex index,
+                                         ObjectStore objects, boolean hash) {
+        ConcurrentLinkedQueue<Found> found = new ConcurrentLinkedQueue<>();
+        Semaphore io = new Semaphore(_ioLimit);
+        ForkJoinPool pool = new ForkJoinPool(_threads);
+        try {
+            pool.invoke(new Visit(_root, "", found, index, objects, hash, io));
+        } finally {
+            pool.shutdown();
+        }
+
+        TreeMap<String, String> result = new TreeMap<>();
+        _hashed = 0;
+        for (Found file : found) {
+            result.put(file._path, file._id);
+            if (file._hashed) {
+                _hashed += 1;
+                if (index != null) {
+                    index.record(file._path, file._attrs, file._id);
+                }
+            }
+        }
+        if (index != null && hash) {
+            for (String path : index.paths()) {
+                if (!result.containsKey(path)) {
+                    index.remove(path);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** A plain file found by a Visit. */
+    private static class Found {
+        /** The file PATH, with attributes ATTRS and contents with id ID
+         *  (or null if not wanted), which was read iff HASHED. */
+        Found(String path, BasicFileAttributes attrs, String id,
+              boolean hashed) {
+            _path = path;
+            _attrs = attrs;
+            _id = id;
+            _hashed = hashed;
+        }
+
+        /** Path of the file. */
+        private final String _path;
+        /** Attributes of the file when examined. */
+        private final BasicFileAttributes _attrs;
+        /** Id of the file's contents, or null. */
+        private final String _id;
+        /** True iff the file was read. */
+        private final boolean _hashed;
+    }
+
+    /** The task of walking one directory. */
+    private static class Visit extends RecursiveAction {
+        /** Serialization version. */
+        private static final long serialVersionUID = 1L;
+
+        /** A task adding to FOUND the plain files under DIR, whose path
+         *  (ending in '/' unless empty) is PREFIX.  INDEX, OBJECTS, HASH,
+         *  and IO are as for walk, IO limiting the files read at once. */
+        Visit(File dir, String prefix, ConcurrentLinkedQueue<Found> found,
+              StageIndex index, ObjectStore objects, boolean hash,
+              Semaphore io) {
+            _dir = dir;
+            _prefix = prefix;
+            _found = found;
+            _index = index;
+            _objects = objects;
+            _hash = hash;
+            _io = io;
+        }
+
+        @Override
+        protected void compute() {
+            String[] names = _dir.list();
+            if (names == null) {
+                return;
+            }
+            List<RecursiveAction> tasks = new ArrayList<>();
+            Batch batch = null;
+            for (String name : names) {
+                if (_prefix.isEmpty() && name.equals(REPO_NAME)) {
+                    continue;
+                }
+                File file = new File(_dir, name);
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(file.toPath(),
+                                                 BasicFileAttributes.class,
+                                                 LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException excp) {
+                    continue;
+                }
+                String path = _prefix + name;
+                if (attrs.isDirectory()) {
+                    tasks.add(new Visit(file, path + "/", _found, _index,
+                                        _objects, _hash, _io));
+                } else if (!attrs.isRegularFile()) {
+                    continue;
+                } else if (!_hash) {
+                    _found.add(new Found(path, attrs, null, false));
+                } else {
+                    String id =
+                        _index == null ? null : _index.lookup(path, attrs);
+                    if (id != null
+                        && (_objects == null || _objects.contains(id))) {
+                        _found.add(new Found(path, attrs, id, false));
+                        continue;
+                    }
+                    if (batch == null || batch.full()) {
+                        batch = new Batch(_found, _objects, _io);
+                        tasks.add(batch);
+                    }
+                    batch.add(file, path, attrs);
+                }
+            }
+            invokeAll(tasks);
+        }
+
+        /** The directory walked. */
+        private final File _dir;
+        /** Path of _dir, plus '/' unless empty. */
+        private final String _prefix;
+        /** Where found files are put. */
+        private final ConcurrentLinkedQueue<Found> _found;
+        /** Index consulted, or null. */
+        private final StageIndex _index;
+        /** Where contents are stored, or null. */
+        private final ObjectStore _objects;
+        /** True iff contents are to be hashed. */
+        private final boolean _hash;
+        /** Limits the files read at once. */
+        private final Semaphore _io;
+    }
+
+    /** The task of hashing up to BATCH_SIZE files of one directory. */
+    private static class Batch extends RecursiveAction {
+        /** Serialization version. */
+        private static final long serialVersionUID = 1L;
+
+        /** A task adding to FOUND the files added to it, hashed (and
+         *  stored in OBJECTS, if not null), with IO limiting the files
+         *  read at once. */
+        Batch(ConcurrentLinkedQueue<Found> found, ObjectStore objects,
+              Semaphore io) {
+            _found = found;
+            _objects = objects;
+            _io = io;
+        }
+
+        /** Add FILE, whose path is PATH and whose attributes are ATTRS, to
+         *  the files to hash. */
+        void add(File file, String path, BasicFileAttributes attrs) {
+            _files.add(file);
+            _paths.add(path);
+            _attrs.add(attrs);
+        }
+
+        /** Return true iff I have BATCH_SIZE files. */
+        boolean full() {
+            return _files.size() >= BATCH_SIZE;
+        }
+
+        @Override
+        protected void compute() {
+            for (int k = 0; k < _files.size(); k += 1) {
+                Found found = hash(_files.get(k), _paths.get(k),
+                                   _attrs.get(k));
+                if (found != null) {
+                    _found.add(found);
+                }
+            }
+        }
+
+        /** Return what was found of FILE, whose path is PATH and whose
+         *  attributes are ATTRS, or null if FILE vanished or ceased to be
+         *  a plain file before it could be read, in which case it is
+         *  treated as absent. */
+        private Found hash(File file, String path,
+                           BasicFileAttributes attrs) {
+            String id;
+            _io.acquireUninterruptibly();
+            try {
+                id = _objects == null ? Utils.sha1(file)
+                    : _objects.putFile(file);
+            } catch (IllegalArgumentException excp) {
+                if (file.isFile()) {
+                    throw excp;
+                }
+                return null;
+            } finally {
+                _io.release();
+            }
+            return new Found(path, attrs, id, true);
+        }
+
+        /** The files to hash. */
+        private final List<File> _files = new ArrayList<>();
+        /** Paths of the files in _files. */
+        private final List<String> _paths = new ArrayList<>();
+        /** Attributes of the files in _files. */
+        private final List<BasicFileAttributes> _attrs = new ArrayList<>();
+        /** Where found files are put. */
+        private final ConcurrentLinkedQueue<Found> _found;
+        /** Where contents are stored, or null. */
+        private final ObjectStore _objects;
+        /** Limits the files read at once. */
+        private final Semaphore _io;
+    }
+
+    /** Root of my tree. */
+    private final File _root;
+    /** Number of threads used. */
+    private final int _threads;
+    /** Most files read at once. */
+    private final int _ioLimit;
+    /** Number of files read by the last hash or add. */
+    private int _hashed;
+
+}